@@ -0,0 +1,214 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.console.server;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The Class AdmissionLimit bounds the concurrent requests of an expensive
+ * endpoint. Requests above the concurrency wait in a bounded queue; a request,
+ * which finds the queue full or waits longer than the timeout, is rejected and
+ * should be answered with 503, so cheap requests keep their threads.
+ * <p>
+ * The limits are read from the properties
+ * <code>server.limit.&lt;name&gt;.concurrency</code>,
+ * <code>server.limit.&lt;name&gt;.queue</code> and
+ * <code>server.limit.&lt;name&gt;.timeout</code>.
+ */
+public class AdmissionLimit {
+
+	/** The Constant EXPORT. Hd pdf and zip downloads, exports on demand, tiles and resized images. */
+	public static final String EXPORT = "export";
+
+	/** The Constant DEFAULT_TIMEOUT. Milliseconds a request waits at most. */
+	private static final long DEFAULT_TIMEOUT = 30000;
+
+	/** The limits by name. */
+	private static final Map<String, AdmissionLimit> limits = new TreeMap<>();
+
+	/** The name. */
+	private final String name;
+
+	/** The permits. */
+	private final Semaphore permits;
+
+	/** The concurrency. */
+	private final int concurrency;
+
+	/** The queue size. */
+	private final int queueSize;
+
+	/** The timeout in milliseconds. */
+	private final long timeout;
+
+	/** The waiting requests. */
+	private final AtomicInteger waiting = new AtomicInteger();
+
+	/** The admitted requests. */
+	private final AtomicLong admitted = new AtomicLong();
+
+	/** The rejected requests. */
+	private final AtomicLong rejected = new AtomicLong();
+
+	/**
+	 * Instantiates a new admission limit.
+	 *
+	 * @param name        the name
+	 * @param concurrency the concurrent requests
+	 * @param queueSize   the waiting requests
+	 * @param timeout     the milliseconds a request waits at most
+	 */
+	public AdmissionLimit(String name, int concurrency, int queueSize, long timeout) {
+		this.name = name;
+		this.concurrency = Math.max(1, concurrency);
+		this.queueSize = Math.max(0, queueSize);
+		this.timeout = Math.max(0, timeout);
+		this.permits = new Semaphore(this.concurrency, true);
+	}
+
+	/**
+	 * Gets the shared limit of the name. The limit is created from the
+	 * properties at the first call.
+	 *
+	 * @param name the name
+	 * @return the limit
+	 */
+	public static synchronized AdmissionLimit get(String name) {
+		AdmissionLimit limit = limits.get(name);
+		if (limit == null) {
+			int defaultConcurrency = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+			String prefix = ServerConfig.LIMIT_PREFIX + name;
+			limit = new AdmissionLimit(name, ServerConfig.getInt(prefix + ".concurrency", defaultConcurrency),
+					ServerConfig.getInt(prefix + ".queue", 4 * defaultConcurrency),
+					ServerConfig.getLong(prefix + ".timeout", DEFAULT_TIMEOUT));
+			limits.put(name, limit);
+		}
+		return limit;
+	}
+
+	/**
+	 * Gets all limits created so far, ordered by name.
+	 *
+	 * @return the limits
+	 */
+	public static synchronized Map<String, AdmissionLimit> getLimits() {
+		return new TreeMap<>(limits);
+	}
+
+	/**
+	 * Acquires a permit. If all permits are taken, the request waits in the
+	 * queue. Every successful call must be followed by {@link #release()}.
+	 *
+	 * @return true, if the request is admitted; false, if the queue is full or
+	 *         the timeout elapsed
+	 */
+	public boolean acquire() {
+		if (permits.tryAcquire()) {
+			admitted.incrementAndGet();
+			return true;
+		}
+
+		if (waiting.incrementAndGet() > queueSize) {
+			waiting.decrementAndGet();
+			rejected.incrementAndGet();
+			return false;
+		}
+
+		try {
+			if (permits.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+				admitted.incrementAndGet();
+				return true;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} finally {
+			waiting.decrementAndGet();
+		}
+		rejected.incrementAndGet();
+		return false;
+	}
+
+	/**
+	 * Releases the permit of an admitted request.
+	 */
+	public void release() {
+		permits.release();
+	}
+
+	/**
+	 * Gets the name.
+	 *
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Gets the running requests.
+	 *
+	 * @return the running requests
+	 */
+	public int getRunning() {
+		return concurrency - permits.availablePermits();
+	}
+
+	/**
+	 * Gets the waiting requests.
+	 *
+	 * @return the waiting requests
+	 */
+	public int getWaiting() {
+		return waiting.get();
+	}
+
+	/**
+	 * Gets the admitted requests.
+	 *
+	 * @return the admitted requests
+	 */
+	public long getAdmitted() {
+		return admitted.get();
+	}
+
+	/**
+	 * Gets the rejected requests.
+	 *
+	 * @return the rejected requests
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 */
+	@Override
+	public String toString() {
+		return "Limit " + name + ": " + getRunning() + " of " + concurrency + " running, " + getWaiting() + " of "
+				+ queueSize + " waiting, " + admitted + " admitted, " + rejected + " rejected";
+	}
+
+}
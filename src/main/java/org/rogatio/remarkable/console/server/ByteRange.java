@@ -0,0 +1,149 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.console.server;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The Class ByteRange is a satisfiable range of a http range request (RFC
+ * 7233) with inclusive first and last byte position.
+ */
+public class ByteRange {
+
+	/** The Constant MAX_RANGES. More ranges are answered with the full file. */
+	private static final int MAX_RANGES = 16;
+
+	/** The first byte position. */
+	private final long first;
+
+	/** The last byte position. */
+	private final long last;
+
+	/**
+	 * Instantiates a new byte range.
+	 *
+	 * @param first the first byte position
+	 * @param last  the last byte position
+	 */
+	public ByteRange(long first, long last) {
+		this.first = first;
+		this.last = last;
+	}
+
+	/**
+	 * Parses the range header for a resource of the given length.
+	 *
+	 * @param header the value of the range header
+	 * @param length the length of the resource
+	 * @return the satisfiable ranges, an empty list if no range is satisfiable
+	 *         or null if the whole resource should be sent
+	 */
+	public static List<ByteRange> parse(String header, long length) {
+		if (header == null || !header.startsWith("bytes=")) {
+			return null;
+		}
+
+		List<ByteRange> ranges = new ArrayList<>();
+		for (String spec : header.substring("bytes=".length()).split(",")) {
+			spec = spec.trim();
+			int dash = spec.indexOf('-');
+			if (dash < 0) {
+				return null;
+			}
+
+			try {
+				String from = spec.substring(0, dash).trim();
+				String to = spec.substring(dash + 1).trim();
+
+				long first;
+				long last;
+				if (from.isEmpty()) {
+					// suffix range with the last n bytes
+					long suffix = Long.parseLong(to);
+					if (suffix <= 0) {
+						continue;
+					}
+					first = Math.max(0, length - suffix);
+					last = length - 1;
+				} else {
+					first = Long.parseLong(from);
+					if (to.isEmpty()) {
+						last = length - 1;
+					} else {
+						long end = Long.parseLong(to);
+						if (end < first) {
+							// invalid syntax, the header is ignored
+							return null;
+						}
+						last = Math.min(end, length - 1);
+					}
+				}
+
+				if (first < length && first <= last) {
+					ranges.add(new ByteRange(first, last));
+				}
+			} catch (NumberFormatException e) {
+				return null;
+			}
+		}
+
+		if (ranges.size() > MAX_RANGES) {
+			return null;
+		}
+		return ranges;
+	}
+
+	/**
+	 * Gets the first byte position.
+	 *
+	 * @return the first
+	 */
+	public long getFirst() {
+		return first;
+	}
+
+	/**
+	 * Gets the last byte position.
+	 *
+	 * @return the last
+	 */
+	public long getLast() {
+		return last;
+	}
+
+	/**
+	 * Gets the number of bytes.
+	 *
+	 * @return the length
+	 */
+	public long getLength() {
+		return last - first + 1;
+	}
+
+	/**
+	 * Gets the value of the content range header.
+	 *
+	 * @param length the length of the resource
+	 * @return the content range
+	 */
+	public String toContentRange(long length) {
+		return "bytes " + first + "-" + last + "/" + length;
+	}
+
+}
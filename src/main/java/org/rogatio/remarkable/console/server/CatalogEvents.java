@@ -0,0 +1,228 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.console.server;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.rogatio.remarkable.api.model.content.Content;
+import org.rogatio.remarkable.console.server.servlet.HomeServlet;
+import org.rogatio.remarkable.console.server.servlet.ImageServlet;
+
+/**
+ * The Class CatalogEvents publishes the changes of the {@link ContentCatalog}
+ * as server-sent events, so the home page patches single tiles instead of
+ * being reloaded. The events are
+ * <ul>
+ * <li>added - a new notebook with its tile data and position</li>
+ * <li>updated - a changed notebook with its tile data and position</li>
+ * <li>removed - the id of a removed notebook</li>
+ * <li>pages - the new and the previous page count of a notebook</li>
+ * <li>snapshot - a new snapshot without changed notebooks</li>
+ * </ul>
+ * Every event carries the version of the catalog. While clients are
+ * subscribed, the catalog is checked once per scan interval, so changes after
+ * a download, read or export are pushed without a request.
+ */
+public class CatalogEvents implements CatalogListener {
+
+	/** The Constant logger. */
+	private static final Logger logger = LogManager.getLogger(CatalogEvents.class);
+
+	/** The Constant DEFAULT_SCAN_INTERVAL. */
+	private static final long DEFAULT_SCAN_INTERVAL = 2000;
+
+	/** The instance. */
+	private static CatalogEvents instance;
+
+	/** The broadcaster. */
+	private final EventBroadcaster broadcaster = new EventBroadcaster();
+
+	/** The page counts by notebook id. */
+	private final Map<String, Integer> pageCounts = new ConcurrentHashMap<>();
+
+	/** The watcher of the catalog. */
+	private final ScheduledExecutorService watcher = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread thread = new Thread(r, "catalog-watch");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	/**
+	 * Instantiates new catalog events.
+	 */
+	private CatalogEvents() {
+		ContentCatalog catalog = ContentCatalog.getInstance();
+		for (Content nb : catalog.getNotebooks()) {
+			pageCounts.put(nb.getId(), nb.getPages().size());
+		}
+		catalog.addListener(this);
+
+		long interval = Math.max(100, ServerConfig.getLong(ServerConfig.CATALOG_SCANINTERVAL, DEFAULT_SCAN_INTERVAL));
+		watcher.scheduleWithFixedDelay(this::check, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Gets the single instance of CatalogEvents.
+	 *
+	 * @return single instance of CatalogEvents
+	 */
+	public static synchronized CatalogEvents getInstance() {
+		if (instance == null) {
+			instance = new CatalogEvents();
+		}
+		return instance;
+	}
+
+	/**
+	 * Gets the broadcaster.
+	 *
+	 * @return the broadcaster
+	 */
+	public EventBroadcaster getBroadcaster() {
+		return broadcaster;
+	}
+
+	/**
+	 * Checks the catalog for changes, if clients are subscribed. The catalog
+	 * calls the listeners, when it finds a change.
+	 */
+	private void check() {
+		if (broadcaster.getSubscriberCount() == 0) {
+			return;
+		}
+		try {
+			ContentCatalog.getInstance().getVersion();
+		} catch (RuntimeException e) {
+			logger.error("Error checking notebooks", e);
+		}
+	}
+
+	/**
+	 * Publishes the changes of the notebooks.
+	 *
+	 * @param version   the version of the snapshot
+	 * @param notebooks the notebooks of the snapshot
+	 * @param added     the ids of the added notebooks
+	 * @param updated   the ids of the updated notebooks
+	 * @param removed   the ids of the removed notebooks
+	 */
+	@Override
+	public void notebooksChanged(long version, List<Content> notebooks, Set<String> added, Set<String> updated,
+			Set<String> removed) {
+		// the clients keep the version, so they do not reload after a reconnect
+		if (added.isEmpty() && updated.isEmpty() && removed.isEmpty()) {
+			broadcaster.publish("snapshot", "{\"version\":" + version + "}");
+			return;
+		}
+
+		for (int i = 0; i < notebooks.size(); i++) {
+			Content nb = notebooks.get(i);
+			boolean isAdded = added.contains(nb.getId());
+			if (!isAdded && !updated.contains(nb.getId())) {
+				continue;
+			}
+
+			int pages = nb.getPages().size();
+			Integer previous = pageCounts.put(nb.getId(), pages);
+			broadcaster.publish(isAdded ? "added" : "updated", toJson(nb, i, version));
+
+			if (!isAdded && previous != null && previous != pages) {
+				broadcaster.publish("pages", toJson(nb.getId(), pages, previous, version));
+			}
+		}
+
+		for (String id : removed) {
+			pageCounts.remove(id);
+			broadcaster.publish("removed", toJson(id, -1, -1, version));
+		}
+	}
+
+	/**
+	 * Gets the json of the tile data of a notebook.
+	 *
+	 * @param nb      the notebook
+	 * @param index   the position in the catalog
+	 * @param version the version of the catalog
+	 * @return the json
+	 */
+	private static String toJson(Content nb, int index, long version) {
+		StringWriter out = new StringWriter();
+		try {
+			JsonWriter json = new JsonWriter(out);
+			json.beginObject();
+			json.name("id").value(nb.getId());
+			json.name("name").value(nb.getName());
+			json.name("pages").value(nb.getPages().size());
+			json.name("index").value(index);
+			json.name("thumbnail").value(ImageServlet.thumbnailUrl(nb));
+			json.name("href").value("notebook?id=" + nb.getId());
+			json.name("downloads").beginArray();
+			for (Map.Entry<String, String> download : HomeServlet.downloads(nb).entrySet()) {
+				json.beginObject().name("label").value(download.getKey()).name("href").value(download.getValue())
+						.endObject();
+			}
+			json.endArray();
+			json.name("version").value(version);
+			json.endObject();
+			json.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return out.toString();
+	}
+
+	/**
+	 * Gets the json of a removed notebook or of a changed page count.
+	 *
+	 * @param id       the id of the notebook
+	 * @param pages    the page count or -1 for a removed notebook
+	 * @param previous the previous page count or -1 for a removed notebook
+	 * @param version  the version of the catalog
+	 * @return the json
+	 */
+	private static String toJson(String id, int pages, int previous, long version) {
+		StringWriter out = new StringWriter();
+		try {
+			JsonWriter json = new JsonWriter(out);
+			json.beginObject();
+			json.name("id").value(id);
+			if (pages >= 0) {
+				json.name("pages").value(pages);
+				json.name("previous").value(previous);
+			}
+			json.name("version").value(version);
+			json.endObject();
+			json.flush();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return out.toString();
+	}
+
+}
@@ -0,0 +1,47 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.console.server;
+
+import java.util.List;
+import java.util.Set;
+
+import org.rogatio.remarkable.api.model.content.Content;
+
+/**
+ * The listener interface for receiving changes of the {@link ContentCatalog}.
+ * The listener is called after every new snapshot of the notebooks, with the
+ * ids of the notebooks which differ from the previous snapshot. The sets are
+ * empty, if no notebook differs. The listeners are called one snapshot after
+ * the other, in the order of the snapshots; they get the snapshot and must not
+ * ask the catalog, which may already hold a newer one.
+ */
+public interface CatalogListener {
+
+	/**
+	 * Notebooks changed.
+	 *
+	 * @param version   the version of the snapshot
+	 * @param notebooks the notebooks of the snapshot
+	 * @param added     the ids of the added notebooks
+	 * @param updated   the ids of the updated notebooks
+	 * @param removed   the ids of the removed notebooks
+	 */
+	void notebooksChanged(long version, List<Content> notebooks, Set<String> added, Set<String> updated,
+			Set<String> removed);
+
+}
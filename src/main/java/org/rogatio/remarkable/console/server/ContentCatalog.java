@@ -0,0 +1,398 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.console.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.rogatio.remarkable.api.RemarkableManager;
+import org.rogatio.remarkable.api.io.PropertiesCache;
+import org.rogatio.remarkable.api.model.content.Content;
+import org.rogatio.remarkable.api.model.content.Page;
+
+/**
+ * The Class ContentCatalog holds an in-memory snapshot of the notebooks for
+ * the web views. The notebooks are read once and only read again, when the
+ * files in the notebook folder have changed. The folder is scanned for changed
+ * modification times and sizes at most once per scan interval or directly
+ * after {@link #invalidate()}. The notebooks are read on the thread of the
+ * {@link JobManager}; while a processing job is active, the last snapshot is
+ * kept.
+ * <p>
+ * Every notebook of a snapshot has a version, derived from its name, its pages
+ * and the modification times of its thumbnails. The registered
+ * {@link CatalogListener}s are told about every new snapshot and which
+ * notebooks it added, updated or removed.
+ */
+public class ContentCatalog {
+
+	/** The Constant logger. */
+	private static final Logger logger = LogManager.getLogger(ContentCatalog.class);
+
+	/** The Constant DEFAULT_SCAN_INTERVAL. */
+	private static final long DEFAULT_SCAN_INTERVAL = 2000;
+
+	/** The instance. */
+	private static ContentCatalog instance;
+
+	/** The notebook folder. */
+	private final File notebookFolder;
+
+	/** The scan interval in milliseconds. */
+	private final long scanInterval;
+
+	/** The notebooks. */
+	private volatile List<Content> notebooks;
+
+	/** The notebooks by id. */
+	private volatile Map<String, Content> notebooksById = Collections.emptyMap();
+
+	/** The versions of the notebooks by id. */
+	private volatile Map<String, Long> notebookVersions = Collections.emptyMap();
+
+	/** The listeners. */
+	private final List<CatalogListener> listeners = new CopyOnWriteArrayList<>();
+
+	/** The lock of the notifications, they keep the order of the snapshots. */
+	private final ReentrantLock notifying = new ReentrantLock();
+
+	/** The fingerprint of the notebook folder. */
+	private volatile long fingerprint;
+
+	/** The version. */
+	private volatile long version;
+
+	/** The last scan. */
+	private volatile long lastScan;
+
+	/** The invalid flag. */
+	private volatile boolean invalid = true;
+
+	/**
+	 * Instantiates a new content catalog.
+	 */
+	private ContentCatalog() {
+		notebookFolder = new File(PropertiesCache.getInstance().getValue(PropertiesCache.NOTEBOOKFOLDER));
+		scanInterval = ServerConfig.getLong(ServerConfig.CATALOG_SCANINTERVAL, DEFAULT_SCAN_INTERVAL);
+	}
+
+	/**
+	 * Gets the single instance of ContentCatalog.
+	 *
+	 * @return single instance of ContentCatalog
+	 */
+	public static synchronized ContentCatalog getInstance() {
+		if (instance == null) {
+			instance = new ContentCatalog();
+		}
+		return instance;
+	}
+
+	/**
+	 * Gets the notebooks.
+	 *
+	 * @return the notebooks
+	 */
+	public List<Content> getNotebooks() {
+		refreshIfChanged();
+		List<Content> snapshot = notebooks;
+		return snapshot != null ? snapshot : Collections.<Content>emptyList();
+	}
+
+	/**
+	 * Gets the content by id.
+	 *
+	 * @param id the id
+	 * @return the content by id or null, if it is not in the snapshot
+	 */
+	public Content getContentById(String id) {
+		refreshIfChanged();
+		return id != null ? notebooksById.get(id) : null;
+	}
+
+	/**
+	 * Gets the notebook by the names of its folders and its own name, joined by
+	 * underscores, like the remarkable api finds the meta data of a notebook.
+	 *
+	 * @param name the names of the folders and the notebook
+	 * @return the notebook or null, if it is unknown
+	 */
+	public Content getContentByFolderAndName(String name) {
+		for (Content nb : getNotebooks()) {
+			if (getFolderAndName(nb).equals(name)) {
+				return nb;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Gets the names of the folders and the name of the notebook, joined by
+	 * underscores.
+	 *
+	 * @param nb the notebook
+	 * @return the names of the folders and the notebook
+	 */
+	public static String getFolderAndName(Content nb) {
+		StringBuilder name = new StringBuilder();
+		if (nb.getFolders() != null) {
+			for (String folder : nb.getFolders()) {
+				name.append(folder).append('_');
+			}
+		}
+		name.append(nb.getName());
+		return name.toString();
+	}
+
+	/**
+	 * Gets the version. It changes with every new snapshot of the notebooks.
+	 *
+	 * @return the version
+	 */
+	public long getVersion() {
+		refreshIfChanged();
+		return version;
+	}
+
+	/**
+	 * Gets the version of the notebook. It changes, when a new snapshot shows
+	 * other pages or thumbnails of the notebook.
+	 *
+	 * @param id the id of the notebook
+	 * @return the version or 0 if the notebook is unknown
+	 */
+	public long getNotebookVersion(String id) {
+		refreshIfChanged();
+		Long notebookVersion = notebookVersions.get(id);
+		return notebookVersion != null ? notebookVersion : 0;
+	}
+
+	/**
+	 * Adds the listener.
+	 *
+	 * @param listener the listener
+	 */
+	public void addListener(CatalogListener listener) {
+		listeners.add(listener);
+	}
+
+	/**
+	 * Removes the listener.
+	 *
+	 * @param listener the listener
+	 */
+	public void removeListener(CatalogListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Invalidates the snapshot after notebooks were downloaded, read or
+	 * exported. The next access takes a new snapshot and scans the notebook
+	 * folder without waiting for the scan interval.
+	 */
+	public void invalidate() {
+		invalid = true;
+	}
+
+	/**
+	 * Reads the notebooks again if the notebook folder has changed.
+	 */
+	private void refreshIfChanged() {
+		if (!invalid && System.currentTimeMillis() - lastScan < scanInterval) {
+			return;
+		}
+
+		Set<String> added = new HashSet<>();
+		Set<String> updated = new HashSet<>();
+		Set<String> removed = new HashSet<>();
+		List<Content> taken = null;
+		long takenVersion = 0;
+
+		synchronized (this) {
+			if (!invalid && System.currentTimeMillis() - lastScan < scanInterval) {
+				return;
+			}
+
+			lastScan = System.currentTimeMillis();
+
+			// a running job changes the notebooks, the last snapshot is kept until it is done
+			if (notebooks != null && JobManager.getInstance().getActive() != null) {
+				return;
+			}
+
+			long current = scan();
+			boolean changed = current != fingerprint || notebooks == null;
+			if (invalid || changed) {
+				List<Content> docs;
+				try {
+					docs = readNotebooks(changed);
+				} catch (RejectedExecutionException e) {
+					return;
+				}
+				invalid = false;
+				fingerprint = current;
+				notebooks = Collections.unmodifiableList(docs);
+				version = System.currentTimeMillis();
+
+				Map<String, Content> byId = new HashMap<>();
+				Map<String, Long> versions = new HashMap<>();
+				for (Content nb : notebooks) {
+					byId.put(nb.getId(), nb);
+					long notebookVersion = versionOf(nb);
+					versions.put(nb.getId(), notebookVersion);
+
+					Long previous = notebookVersions.get(nb.getId());
+					if (previous == null) {
+						added.add(nb.getId());
+					} else if (previous != notebookVersion) {
+						updated.add(nb.getId());
+					}
+				}
+				for (String id : notebookVersions.keySet()) {
+					if (!versions.containsKey(id)) {
+						removed.add(id);
+					}
+				}
+				notebooksById = byId;
+				notebookVersions = versions;
+
+				taken = notebooks;
+				takenVersion = version;
+				// taken before the catalog is unlocked, so the next snapshot is notified later
+				notifying.lock();
+			}
+		}
+
+		// listeners are called outside of the lock with the snapshot they are told about
+		if (taken != null) {
+			try {
+				for (CatalogListener listener : listeners) {
+					try {
+						listener.notebooksChanged(takenVersion, taken, added, updated, removed);
+					} catch (RuntimeException e) {
+						logger.error("Error notifying catalog listener", e);
+					}
+				}
+			} finally {
+				notifying.unlock();
+			}
+		}
+	}
+
+	/**
+	 * Reads the notebooks on the thread of the processing jobs, so the
+	 * remarkable manager is not used by a job at the same time.
+	 *
+	 * @param changed true, if the notebook folder has changed
+	 * @return the notebooks
+	 * @throws RejectedExecutionException if a processing job is active
+	 */
+	private static List<Content> readNotebooks(boolean changed) {
+		try {
+			return JobManager.getInstance().call(() -> {
+				RemarkableManager rm = RemarkableManager.getInstance();
+				if (changed) {
+					logger.debug("Notebook folder changed, read notebooks");
+					rm.readContents();
+				}
+				List<Content> docs = rm.getNotebooks();
+				return docs != null ? new ArrayList<>(docs) : new ArrayList<Content>();
+			});
+		} catch (RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Gets the version of the notebook from its name, its pages and the
+	 * modification times of the thumbnails.
+	 *
+	 * @param nb the notebook
+	 * @return the version
+	 */
+	private static long versionOf(Content nb) {
+		long hash = 17;
+		hash = 31 * hash + String.valueOf(nb.getName()).hashCode();
+		hash = 31 * hash + fileVersion(nb.getThumbnail());
+		List<Page> pages = nb.getPages();
+		if (pages != null) {
+			hash = 31 * hash + pages.size();
+			for (Page p : pages) {
+				hash = 31 * hash + fileVersion(p.getThumbnail());
+			}
+		}
+		return hash;
+	}
+
+	/**
+	 * Gets the version of the file from its modification time and size.
+	 *
+	 * @param file the file
+	 * @return the version
+	 */
+	private static long fileVersion(File file) {
+		return file != null ? 31 * file.lastModified() + file.length() : 0;
+	}
+
+	/**
+	 * Scans the modification times and sizes of all files in the notebook
+	 * folder.
+	 *
+	 * @return the fingerprint
+	 */
+	private long scan() {
+		final long[] hash = { 17 };
+		if (!notebookFolder.exists()) {
+			return hash[0];
+		}
+		try {
+			Files.walkFileTree(notebookFolder.toPath(), new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+					hash[0] = 31 * hash[0] + file.hashCode();
+					hash[0] = 31 * hash[0] + attrs.lastModifiedTime().toMillis();
+					hash[0] = 31 * hash[0] + attrs.size();
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} catch (IOException e) {
+			logger.error("Error scanning notebook folder", e);
+		}
+		return hash[0];
+	}
+
+}
@@ -17,23 +17,61 @@
  */
 package org.rogatio.remarkable.console.server;
 
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.jetty.http2.server.HTTP2CServerConnectionFactory;
+import org.eclipse.jetty.server.AbstractConnector;
+import org.eclipse.jetty.server.ConnectionFactory;
 import org.eclipse.jetty.server.Connector;
+import org.eclipse.jetty.server.ForwardedRequestCustomizer;
+import org.eclipse.jetty.server.Handler;
+import org.eclipse.jetty.server.HttpConfiguration;
+import org.eclipse.jetty.server.HttpConnectionFactory;
+import org.eclipse.jetty.server.LocalConnector;
 import org.eclipse.jetty.server.Server;
 import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.server.handler.gzip.GzipHandler;
 import org.eclipse.jetty.servlet.ServletHandler;
+import org.eclipse.jetty.unixsocket.server.UnixSocketConnector;
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.ThreadPool;
 import org.rogatio.remarkable.api.io.PropertiesCache;
+import org.rogatio.remarkable.console.server.servlet.ApiServlet;
+import org.rogatio.remarkable.console.server.servlet.CatalogEventServlet;
 import org.rogatio.remarkable.console.server.servlet.DownloadPageServlet;
 import org.rogatio.remarkable.console.server.servlet.HomeServlet;
+import org.rogatio.remarkable.console.server.servlet.ImageServlet;
+import org.rogatio.remarkable.console.server.servlet.JobServlet;
+import org.rogatio.remarkable.console.server.servlet.LogServlet;
+import org.rogatio.remarkable.console.server.servlet.MetricsServlet;
 import org.rogatio.remarkable.console.server.servlet.NotebookServlet;
+import org.rogatio.remarkable.console.server.servlet.PageListServlet;
 import org.rogatio.remarkable.console.server.servlet.PageNavigationServlet;
 import org.rogatio.remarkable.console.server.servlet.PageServlet;
 import org.rogatio.remarkable.console.server.servlet.ProcessorServlet;
+import org.rogatio.remarkable.console.server.servlet.ResizeServlet;
+import org.rogatio.remarkable.console.server.servlet.TileServlet;
+import org.rogatio.remarkable.console.server.servlet.ZoomServlet;
+
+import jnr.unixsocket.UnixSocketAddress;
+import jnr.unixsocket.UnixSocketChannel;
 
 /**
  * The Class EmbeddedServer.
  */
 public class EmbeddedServer {
 
+	/** The Constant logger. */
+	private static final Logger logger = LogManager.getLogger(EmbeddedServer.class);
+
 	/** The server. */
 	private Server server;
 
@@ -46,36 +84,212 @@ public class EmbeddedServer {
 		server.stop();
 	}
 	
+	/**
+	 * Checks if the server is started.
+	 *
+	 * @return true, if is started
+	 */
 	public boolean isStarted() {
-		return server.isStarted();
+		return server != null && server.isStarted();
+	}
+
+	/**
+	 * Gets the thread pool of the server.
+	 *
+	 * @return the thread pool or null, if the server was never started
+	 */
+	public ThreadPool getThreadPool() {
+		return server != null ? server.getThreadPool() : null;
+	}
+
+	/**
+	 * Creates the thread pool. Virtual threads are used if configured and the
+	 * JDK supports them, otherwise a pool of platform threads.
+	 *
+	 * @return the thread pool
+	 */
+	private ThreadPool createThreadPool() {
+		if (ServerConfig.getBoolean(ServerConfig.THREADS_VIRTUAL, false)) {
+			VirtualThreadPool virtualThreadPool = VirtualThreadPool.create();
+			if (virtualThreadPool != null) {
+				logger.info("Server handles requests in virtual threads");
+				return virtualThreadPool;
+			}
+			logger.warn("Virtual threads need JDK 21 or later, server uses a thread pool");
+		}
+
+		QueuedThreadPool threadPool = new QueuedThreadPool(ServerConfig.getInt(ServerConfig.THREADS_MAX, 200),
+				ServerConfig.getInt(ServerConfig.THREADS_MIN, 8),
+				ServerConfig.getInt(ServerConfig.THREADS_IDLETIMEOUT, 60000));
+		threadPool.setName("server");
+		return threadPool;
 	}
 	
 	/**
-	 * Start the server.
+	 * Creates the connection factories of a connector. Besides HTTP/1.1, the
+	 * connector speaks HTTP/2 without TLS (h2c), if configured: clients either
+	 * upgrade an HTTP/1.1 connection or start with HTTP/2 directly, and
+	 * multiplex their requests over one connection.
 	 *
-	 * @throws Exception the exception
+	 * @param httpConfig the http config
+	 * @return the connection factories
 	 */
-	public void start() throws Exception {
-		server = new Server();
-		ServerConnector connector = new ServerConnector(server);
-		
-		int port = PropertiesCache.getInstance().getInt(PropertiesCache.SERVERPORT);
-		connector.setPort(port);
-		
-		server.setConnectors(new Connector[] { connector });
+	private ConnectionFactory[] createConnectionFactories(HttpConfiguration httpConfig) {
+		HttpConnectionFactory http1 = new HttpConnectionFactory(httpConfig);
+		if (!ServerConfig.getBoolean(ServerConfig.HTTP2, false)) {
+			return new ConnectionFactory[] { http1 };
+		}
+
+		HTTP2CServerConnectionFactory h2c = new HTTP2CServerConnectionFactory(httpConfig);
+		h2c.setMaxConcurrentStreams(ServerConfig.getInt(ServerConfig.HTTP2_MAXSTREAMS, 256));
+		logger.info("Server accepts HTTP/2 without TLS (h2c)");
+		return new ConnectionFactory[] { http1, h2c };
+	}
+
+	/**
+	 * Creates the connector of a unix domain socket for a reverse proxy on the
+	 * same host. The proxy passes the client address and the original host in
+	 * the X-Forwarded headers. A socket file left over by a previous run is
+	 * removed, a socket another server listens on is kept.
+	 *
+	 * @param unixSocket the path of the socket file
+	 * @param httpConfig the http config
+	 * @return the connector
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private UnixSocketConnector createUnixSocketConnector(String unixSocket, HttpConfiguration httpConfig)
+			throws IOException {
+		Path socket = Paths.get(unixSocket);
+		if (Files.exists(socket, LinkOption.NOFOLLOW_LINKS) && !Files.isRegularFile(socket, LinkOption.NOFOLLOW_LINKS)
+				&& !Files.isDirectory(socket, LinkOption.NOFOLLOW_LINKS)) {
+			if (isListening(socket)) {
+				throw new IOException("Unix socket " + unixSocket + " is used by another server");
+			}
+			Files.delete(socket);
+		}
+
+		HttpConfiguration proxiedConfig = new HttpConfiguration(httpConfig);
+		proxiedConfig.addCustomizer(new ForwardedRequestCustomizer());
+
+		UnixSocketConnector connector = new UnixSocketConnector(server, ServerConfig.getInt(ServerConfig.SELECTORS, -1),
+				createConnectionFactories(proxiedConfig));
+		connector.setUnixSocket(unixSocket);
+		logger.info("Server listens on unix socket " + unixSocket);
+		return connector;
+	}
+
+	/**
+	 * Checks if a server listens on the unix socket. A socket file left over by
+	 * a previous run refuses the connection.
+	 *
+	 * @param socket the path of the socket file
+	 * @return true, if the connection is accepted
+	 */
+	private static boolean isListening(Path socket) {
+		try {
+			UnixSocketChannel.open(new UnixSocketAddress(socket.toFile())).close();
+			return true;
+		} catch (IOException e) {
+			return false;
+		}
+	}
 
+	/**
+	 * Creates the handler of the requests, which maps the servlets and
+	 * compresses the responses, if configured.
+	 *
+	 * @return the handler
+	 */
+	private Handler createHandler() {
 		ServletHandler servletHandler = new ServletHandler();
 		servletHandler.addServletWithMapping(HomeServlet.class, "/");
 		servletHandler.addServletWithMapping(NotebookServlet.class, "/notebook");
+		servletHandler.addServletWithMapping(PageListServlet.class, "/pages");
 		servletHandler.addServletWithMapping(PageNavigationServlet.class, "/navigation");
 		servletHandler.addServletWithMapping(PageServlet.class, "/page");
+		servletHandler.addServletWithMapping(ZoomServlet.class, "/zoom");
+		servletHandler.addServletWithMapping(TileServlet.class, "/tiles/*");
 		servletHandler.addServletWithMapping(DownloadPageServlet.class, "/download");
+		servletHandler.addServletWithMapping(ImageServlet.class, "/thumbnail");
+		servletHandler.addServletWithMapping(ResizeServlet.class, "/image");
 		servletHandler.addServletWithMapping(ProcessorServlet.class, "/processor");
-		server.setHandler(servletHandler);
+		servletHandler.addServletWithMapping(JobServlet.class, "/jobs/*").setAsyncSupported(true);
+		servletHandler.addServletWithMapping(LogServlet.class, "/log").setAsyncSupported(true);
+		servletHandler.addServletWithMapping(CatalogEventServlet.class, "/events").setAsyncSupported(true);
+		servletHandler.addServletWithMapping(ApiServlet.class, "/api/*");
+		servletHandler.addServletWithMapping(MetricsServlet.class, "/metrics");
+
+		if (ServerConfig.getBoolean(ServerConfig.GZIP, true)) {
+			// responses with a content encoding (precompressed sidecars) are skipped
+			GzipHandler gzipHandler = new GzipHandler();
+			gzipHandler.setIncludedMimeTypes("text/html", "text/plain", "text/css", "application/javascript",
+					"application/json", "image/svg+xml");
+			// html views are flushed in parts, which should reach the browser
+			gzipHandler.setSyncFlush(true);
+			gzipHandler.setHandler(servletHandler);
+			return gzipHandler;
+		}
+		return servletHandler;
+	}
+
+	/**
+	 * Start the server.
+	 *
+	 * @throws Exception the exception
+	 */
+	public void start() throws Exception {
+		server = new Server(createThreadPool());
+
+		HttpConfiguration httpConfig = new HttpConfiguration();
+		httpConfig.setOutputBufferSize(ServerConfig.getInt(ServerConfig.OUTPUTBUFFERSIZE, 32768));
+
+		List<AbstractConnector> connectors = new ArrayList<>();
+
+		String unixSocket = ServerConfig.getValue(ServerConfig.UNIXSOCKET, "");
+		if (!unixSocket.isEmpty()) {
+			connectors.add(createUnixSocketConnector(unixSocket, httpConfig));
+		}
+
+		if (ServerConfig.getBoolean(ServerConfig.TCP, true) || connectors.isEmpty()) {
+			ServerConnector connector = new ServerConnector(server, ServerConfig.getInt(ServerConfig.ACCEPTORS, -1),
+					ServerConfig.getInt(ServerConfig.SELECTORS, -1), createConnectionFactories(httpConfig));
+
+			int port = PropertiesCache.getInstance().getInt(PropertiesCache.SERVERPORT);
+			connector.setPort(port);
+			connectors.add(connector);
+		}
+
+		for (AbstractConnector connector : connectors) {
+			connector.setIdleTimeout(ServerConfig.getLong(ServerConfig.IDLETIMEOUT, 30000));
+			connector.addBean(ServerMetrics.getInstance().getListener());
+		}
+		ServerMetrics.getInstance().setThreadPool(server.getThreadPool());
+
+		server.setConnectors(connectors.toArray(new Connector[connectors.size()]));
+		server.setHandler(createHandler());
 
 		server.start();
 	}
 	
+	/**
+	 * Starts the server without a network connector. Requests are sent to the
+	 * returned connector in the same process, e.g. to render the views into
+	 * files.
+	 *
+	 * @return the local connector
+	 * @throws Exception the exception
+	 */
+	public LocalConnector startLocal() throws Exception {
+		server = new Server(createThreadPool());
+
+		LocalConnector connector = new LocalConnector(server);
+		server.addConnector(connector);
+		server.setHandler(createHandler());
+
+		server.start();
+		return connector;
+	}
+
 	/**
 	 * Join server thread
 	 *
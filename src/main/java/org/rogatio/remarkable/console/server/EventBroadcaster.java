@@ -0,0 +1,472 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.console.server;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * The Class EventBroadcaster sends server-sent events to any number of
+ * subscribers. Publishing never blocks: every subscriber has its own bounded
+ * queue, which is drained by a writer thread. Writing never blocks either: the
+ * output stream is used in non-blocking mode, so the writer leaves a client
+ * which does not take more data and continues, when the client is ready
+ * again. Events for a subscriber with a full queue are dropped and counted. A
+ * subscriber which misses more events than its queue holds is disconnected.
+ * <p>
+ * A new subscriber is paused until {@link #start(Subscriber)}: the events sent
+ * to it directly, e.g. the current state, are written before the events
+ * published meanwhile, and a closed broadcaster ends the stream only after
+ * them. All streams get a comment line as heartbeat, so idle connections are
+ * not dropped by the idle timeout of the server or a proxy.
+ */
+public class EventBroadcaster {
+
+	/** The Constant DEFAULT_QUEUE_SIZE. */
+	private static final int DEFAULT_QUEUE_SIZE = 256;
+
+	/** The Constant DEFAULT_HEARTBEAT. */
+	private static final long DEFAULT_HEARTBEAT = 15000;
+
+	/** The Constant HEARTBEAT. A comment, which is ignored by the clients. */
+	private static final String HEARTBEAT = ":\n";
+
+	/** The Constant WRITERS. The writer threads of all broadcasters. */
+	private static final ThreadPoolExecutor WRITERS;
+
+	/** The Constant TIMER. The thread sending the heartbeats. */
+	private static final ScheduledExecutorService TIMER = Executors.newSingleThreadScheduledExecutor(r -> {
+		Thread t = new Thread(r, "event-heartbeat");
+		t.setDaemon(true);
+		return t;
+	});
+
+	/** The Constant STREAMS. The started subscribers of all broadcasters. */
+	private static final Set<Subscriber> STREAMS = ConcurrentHashMap.newKeySet();
+
+	static {
+		int writers = ServerConfig.getInt(ServerConfig.EVENTS_WRITERS,
+				Math.max(2, Runtime.getRuntime().availableProcessors()));
+		// one drain per subscriber is queued at most and never blocks, idle writer threads end
+		WRITERS = new ThreadPoolExecutor(writers, writers, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+			Thread t = new Thread(r, "event-writer");
+			t.setDaemon(true);
+			return t;
+		});
+		WRITERS.allowCoreThreadTimeOut(true);
+
+		long heartbeat = ServerConfig.getLong(ServerConfig.EVENTS_HEARTBEAT, DEFAULT_HEARTBEAT);
+		if (heartbeat > 0) {
+			TIMER.scheduleWithFixedDelay(EventBroadcaster::heartbeat, heartbeat, heartbeat, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/** The subscribers. */
+	private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+	/** The queue size. */
+	private final int queueSize;
+
+	/** The closed flag. */
+	private volatile boolean closed;
+
+	/**
+	 * The Class Subscriber is a client with an asynchronous event stream.
+	 */
+	public class Subscriber implements AsyncListener, WriteListener {
+
+		/** The queue of formatted events. */
+		private final BlockingQueue<String> queue = new ArrayBlockingQueue<>(queueSize);
+
+		/** The events sent before the start, they are written first. */
+		private final List<String> initial = new ArrayList<>();
+
+		/** The async context. */
+		private final AsyncContext async;
+
+		/** The output stream in non-blocking mode. */
+		private final ServletOutputStream out;
+
+		/** The started flag, the writer thread is scheduled after the start. */
+		private volatile boolean started;
+
+		/** The signals for the writer thread, it is scheduled for the first one. */
+		private final AtomicInteger signals = new AtomicInteger();
+
+		/** The flushed flag, false after a write until the next flush. */
+		private boolean flushed = true;
+
+		/** The ended flag. */
+		private boolean ended;
+
+		/** The dropped events since the last write. */
+		private final AtomicLong dropped = new AtomicLong();
+
+		/** The closing flag, the stream ends when the queue is drained. */
+		private volatile boolean closing;
+
+		/** The disconnected flag, the stream ends immediately. */
+		private volatile boolean disconnected;
+
+		/**
+		 * Instantiates a new subscriber.
+		 *
+		 * @param async the async context
+		 * @param out   the output stream
+		 */
+		private Subscriber(AsyncContext async, ServletOutputStream out) {
+			this.async = async;
+			this.out = out;
+		}
+
+		/**
+		 * Offers the event to the queue without blocking.
+		 *
+		 * @param frame the formatted event
+		 */
+		private void offer(String frame) {
+			if (!queue.offer(frame) && dropped.incrementAndGet() > queueSize) {
+				disconnected = true;
+			}
+			schedule();
+		}
+
+		/**
+		 * Queues a heartbeat. A heartbeat is not counted as dropped event, if the
+		 * queue is full.
+		 */
+		private void beat() {
+			if (queue.offer(HEARTBEAT)) {
+				schedule();
+			}
+		}
+
+		/**
+		 * Ends the stream after the queued events are written.
+		 */
+		public void close() {
+			closing = true;
+			schedule();
+		}
+
+		/**
+		 * Schedules the writer thread, if the stream is started and the writer
+		 * is not already running. A running writer checks the queue again.
+		 */
+		private void schedule() {
+			if (started && signals.getAndIncrement() == 0) {
+				WRITERS.execute(this::drain);
+			}
+		}
+
+		/**
+		 * Writes the queued events until the client is not ready, and again for
+		 * the signals received meanwhile.
+		 */
+		private void drain() {
+			int missed = 1;
+			do {
+				if (!write()) {
+					// the stream ended, the writer is never scheduled again
+					return;
+				}
+				missed = signals.addAndGet(-missed);
+			} while (missed != 0);
+		}
+
+		/**
+		 * Writes and flushes the queued events, as long as the output stream is
+		 * ready. The stream calls {@link #onWritePossible()}, when it is ready
+		 * again.
+		 *
+		 * @return false, if the stream ended
+		 */
+		private boolean write() {
+			if (ended) {
+				return false;
+			}
+			if (disconnected) {
+				end();
+				return false;
+			}
+			try {
+				while (out.isReady()) {
+					String frame = next();
+					if (frame != null) {
+						out.write(frame.getBytes(StandardCharsets.UTF_8));
+						flushed = false;
+					} else if (!flushed) {
+						out.flush();
+						flushed = true;
+					} else {
+						if (closing) {
+							end();
+							return false;
+						}
+						return true;
+					}
+				}
+				return true;
+			} catch (IOException e) {
+				end();
+				return false;
+			}
+		}
+
+		/**
+		 * Gets the next event to write: the events sent before the start, the
+		 * count of the dropped events and the queued events.
+		 *
+		 * @return the formatted event or null, if nothing is queued
+		 */
+		private String next() {
+			if (!initial.isEmpty()) {
+				return initial.remove(0);
+			}
+			long missed = dropped.getAndSet(0);
+			if (missed > 0) {
+				return format("dropped", Long.toString(missed));
+			}
+			return queue.poll();
+		}
+
+		/**
+		 * On write possible.
+		 */
+		public void onWritePossible() {
+			schedule();
+		}
+
+		/**
+		 * On error of a write.
+		 *
+		 * @param t the throwable
+		 */
+		public void onError(Throwable t) {
+			disconnected = true;
+			schedule();
+		}
+
+		/**
+		 * Ends the stream.
+		 */
+		private void end() {
+			ended = true;
+			subscribers.remove(this);
+			STREAMS.remove(this);
+			try {
+				async.complete();
+			} catch (IllegalStateException e) {
+				// already completed
+			}
+		}
+
+		/**
+		 * On complete.
+		 *
+		 * @param event the event
+		 */
+		public void onComplete(AsyncEvent event) {
+			subscribers.remove(this);
+			STREAMS.remove(this);
+		}
+
+		/**
+		 * On timeout.
+		 *
+		 * @param event the event
+		 */
+		public void onTimeout(AsyncEvent event) {
+			subscribers.remove(this);
+			STREAMS.remove(this);
+		}
+
+		/**
+		 * On error.
+		 *
+		 * @param event the event
+		 */
+		public void onError(AsyncEvent event) {
+			subscribers.remove(this);
+			STREAMS.remove(this);
+		}
+
+		/**
+		 * On start async.
+		 *
+		 * @param event the event
+		 */
+		public void onStartAsync(AsyncEvent event) {
+		}
+	}
+
+	/**
+	 * Instantiates a new event broadcaster with the default queue size.
+	 */
+	public EventBroadcaster() {
+		this(ServerConfig.getInt(ServerConfig.EVENTS_QUEUESIZE, DEFAULT_QUEUE_SIZE));
+	}
+
+	/**
+	 * Instantiates a new event broadcaster.
+	 *
+	 * @param queueSize the queue size of each subscriber
+	 */
+	public EventBroadcaster(int queueSize) {
+		this.queueSize = Math.max(1, queueSize);
+	}
+
+	/**
+	 * Starts an asynchronous event stream for the request. The request thread
+	 * is released, when the servlet returns. The subscriber receives the
+	 * published events from now on, but they are written only after
+	 * {@link #start(Subscriber)}.
+	 *
+	 * @param request  the request
+	 * @param response the response
+	 * @return the subscriber
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public Subscriber subscribe(HttpServletRequest request, HttpServletResponse response) throws IOException {
+		response.setContentType("text/event-stream");
+		response.setCharacterEncoding("UTF-8");
+		response.setHeader("Cache-Control", "no-store");
+
+		AsyncContext async = request.startAsync();
+		async.setTimeout(0);
+
+		// sends the headers to the client
+		response.flushBuffer();
+
+		ServletOutputStream out = response.getOutputStream();
+		Subscriber subscriber = new Subscriber(async, out);
+		async.addListener(subscriber);
+		subscribers.add(subscriber);
+		out.setWriteListener(subscriber);
+		return subscriber;
+	}
+
+	/**
+	 * Sends an event to one subscriber. Events sent before the start of the
+	 * subscriber are written before all published events.
+	 *
+	 * @param subscriber the subscriber
+	 * @param event      the event name
+	 * @param data       the data
+	 */
+	public void send(Subscriber subscriber, String event, String data) {
+		if (subscriber.started) {
+			subscriber.offer(format(event, data));
+		} else {
+			subscriber.initial.add(format(event, data));
+		}
+	}
+
+	/**
+	 * Starts writing the events of the subscriber. The stream of a closed
+	 * broadcaster ends after the events sent before.
+	 *
+	 * @param subscriber the subscriber
+	 */
+	public void start(Subscriber subscriber) {
+		subscriber.started = true;
+		STREAMS.add(subscriber);
+		if (closed) {
+			subscriber.closing = true;
+		}
+		subscriber.schedule();
+	}
+
+	/**
+	 * Publishes an event to all subscribers. The method never blocks.
+	 *
+	 * @param event the event name
+	 * @param data  the data
+	 */
+	public void publish(String event, String data) {
+		if (subscribers.isEmpty()) {
+			return;
+		}
+		String frame = format(event, data);
+		for (Subscriber subscriber : subscribers) {
+			subscriber.offer(frame);
+		}
+	}
+
+	/**
+	 * Ends all streams after their queued events are written.
+	 */
+	public void close() {
+		closed = true;
+		for (Subscriber subscriber : subscribers) {
+			subscriber.close();
+		}
+	}
+
+	/**
+	 * Gets the subscriber count.
+	 *
+	 * @return the subscriber count
+	 */
+	public int getSubscriberCount() {
+		return subscribers.size();
+	}
+
+	/**
+	 * Sends a heartbeat to all started subscribers.
+	 */
+	private static void heartbeat() {
+		for (Subscriber subscriber : STREAMS) {
+			subscriber.beat();
+		}
+	}
+
+	/**
+	 * Formats a server-sent event.
+	 *
+	 * @param event the event name
+	 * @param data  the data
+	 * @return the formatted event
+	 */
+	private static String format(String event, String data) {
+		return "event: " + event + "\ndata: " + data.replace("\n", "\ndata: ") + "\n\n";
+	}
+
+}
@@ -0,0 +1,194 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.console.server;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+import org.rogatio.remarkable.api.model.content.Content;
+
+/**
+ * The Class FragmentCache keeps rendered html fragments of the notebooks, e.g.
+ * the tile of a notebook on the home page or its page grid. A fragment is
+ * stored with the version of its notebook in the {@link ContentCatalog} and is
+ * rendered again, when the notebook has another version. The fragments of a
+ * notebook are dropped, when the catalog reports the notebook as updated or
+ * removed, or when it was read or exported by the console.
+ */
+public class FragmentCache implements CatalogListener {
+
+	/** The instance. */
+	private static FragmentCache instance;
+
+	/** The fragments by notebook id and fragment name. */
+	private final Map<String, Map<String, Fragment>> fragments = new ConcurrentHashMap<>();
+
+	/** The hits. */
+	private final AtomicLong hits = new AtomicLong();
+
+	/** The misses. */
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * The Class Fragment.
+	 */
+	private static final class Fragment {
+
+		/** The version of the notebook. */
+		private final long version;
+
+		/** The html. */
+		private final String html;
+
+		/**
+		 * Instantiates a new fragment.
+		 *
+		 * @param version the version
+		 * @param html    the html
+		 */
+		private Fragment(long version, String html) {
+			this.version = version;
+			this.html = html;
+		}
+	}
+
+	/**
+	 * Instantiates a new fragment cache.
+	 */
+	private FragmentCache() {
+	}
+
+	/**
+	 * Gets the single instance of FragmentCache.
+	 *
+	 * @return single instance of FragmentCache
+	 */
+	public static synchronized FragmentCache getInstance() {
+		if (instance == null) {
+			instance = new FragmentCache();
+			ContentCatalog.getInstance().addListener(instance);
+		}
+		return instance;
+	}
+
+	/**
+	 * Gets the fragment of the notebook. The fragment is rendered, if it is not
+	 * cached for the current version of the notebook.
+	 *
+	 * @param nb       the notebook
+	 * @param name     the name of the fragment
+	 * @param renderer the renderer of the fragment
+	 * @return the html
+	 */
+	public String get(Content nb, String name, Supplier<String> renderer) {
+		long version = ContentCatalog.getInstance().getNotebookVersion(nb.getId());
+		Map<String, Fragment> notebookFragments = fragments.computeIfAbsent(nb.getId(),
+				id -> new ConcurrentHashMap<>());
+
+		Fragment fragment = notebookFragments.get(name);
+		if (fragment != null && fragment.version == version) {
+			hits.incrementAndGet();
+			return fragment.html;
+		}
+
+		misses.incrementAndGet();
+		String html = renderer.get();
+		notebookFragments.put(name, new Fragment(version, html));
+		return html;
+	}
+
+	/**
+	 * Drops the fragments of the notebook.
+	 *
+	 * @param id the id of the notebook
+	 */
+	public void invalidate(String id) {
+		if (id != null) {
+			fragments.remove(id);
+		}
+	}
+
+	/**
+	 * Drops all fragments.
+	 */
+	public void clear() {
+		fragments.clear();
+	}
+
+	/**
+	 * Drops the fragments of the updated and removed notebooks.
+	 *
+	 * @param version   the version of the snapshot
+	 * @param notebooks the notebooks of the snapshot
+	 * @param added     the ids of the added notebooks
+	 * @param updated   the ids of the updated notebooks
+	 * @param removed   the ids of the removed notebooks
+	 */
+	@Override
+	public void notebooksChanged(long version, List<Content> notebooks, Set<String> added, Set<String> updated,
+			Set<String> removed) {
+		fragments.keySet().removeAll(updated);
+		fragments.keySet().removeAll(removed);
+	}
+
+	/**
+	 * Gets the hits.
+	 *
+	 * @return the hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Gets the misses.
+	 *
+	 * @return the misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Gets the number of cached fragments.
+	 *
+	 * @return the count
+	 */
+	public int getCount() {
+		int count = 0;
+		for (Map<String, Fragment> notebookFragments : fragments.values()) {
+			count += notebookFragments.size();
+		}
+		return count;
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 */
+	@Override
+	public String toString() {
+		return "FragmentCache[fragments=" + getCount() + ", hits=" + hits.get() + ", misses=" + misses.get() + "]";
+	}
+
+}
@@ -0,0 +1,328 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.console.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+/**
+ * The Class ImageCache keeps the bytes of recently used thumbnails and page
+ * images in memory. The least recently used images are evicted when the
+ * configured byte budget is exceeded. An entry is only valid as long as
+ * modification time and size of its file are unchanged, so a new export
+ * replaces the cached image automatically.
+ */
+public class ImageCache {
+
+	/** The Constant logger. */
+	private static final Logger logger = LogManager.getLogger(ImageCache.class);
+
+	/** The Constant PREFETCHER. Loads images in the background, excess requests are rejected. */
+	private static final ThreadPoolExecutor PREFETCHER = new ThreadPoolExecutor(2, 2, 30, TimeUnit.SECONDS,
+			new ArrayBlockingQueue<>(32), r -> {
+				Thread thread = new Thread(r, "image-prefetch");
+				thread.setDaemon(true);
+				return thread;
+			});
+
+	static {
+		PREFETCHER.allowCoreThreadTimeOut(true);
+	}
+
+	/** The Constant DEFAULT_SIZE. 32 MB. */
+	private static final long DEFAULT_SIZE = 32L * 1024 * 1024;
+
+	/** The instance. */
+	private static ImageCache instance;
+
+	/** The entries in access order. */
+	private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+	/** The capacity in bytes. */
+	private final long capacity;
+
+	/** The size in bytes. */
+	private long size;
+
+	/** The hits. */
+	private final AtomicLong hits = new AtomicLong();
+
+	/** The misses. */
+	private final AtomicLong misses = new AtomicLong();
+
+	/** The evictions. */
+	private final AtomicLong evictions = new AtomicLong();
+
+	/** The prefetched images. */
+	private final AtomicLong prefetches = new AtomicLong();
+
+	/** The keys of the images waiting to be prefetched. */
+	private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * The Class Entry.
+	 */
+	private static class Entry {
+
+		/** The last modified. */
+		private final long lastModified;
+
+		/** The length. */
+		private final long length;
+
+		/** The bytes. */
+		private final byte[] bytes;
+
+		/**
+		 * Instantiates a new entry.
+		 *
+		 * @param lastModified the last modified
+		 * @param length       the length
+		 * @param bytes        the bytes
+		 */
+		private Entry(long lastModified, long length, byte[] bytes) {
+			this.lastModified = lastModified;
+			this.length = length;
+			this.bytes = bytes;
+		}
+	}
+
+	/**
+	 * Instantiates a new image cache.
+	 *
+	 * @param capacity the capacity in bytes
+	 */
+	public ImageCache(long capacity) {
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Gets the shared instance. The capacity is read from the property
+	 * {@link ServerConfig#IMAGECACHE_SIZE}.
+	 *
+	 * @return the instance
+	 */
+	public static synchronized ImageCache getInstance() {
+		if (instance == null) {
+			instance = new ImageCache(ServerConfig.getLong(ServerConfig.IMAGECACHE_SIZE, DEFAULT_SIZE));
+		}
+		return instance;
+	}
+
+	/**
+	 * Gets the bytes of the image file, from the cache if the file is
+	 * unchanged.
+	 *
+	 * @param file the file
+	 * @return the bytes
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public byte[] get(File file) throws IOException {
+		String key = file.getAbsolutePath();
+		long lastModified = file.lastModified();
+		long length = file.length();
+
+		byte[] bytes = lookup(key, lastModified, length);
+		if (bytes != null) {
+			hits.incrementAndGet();
+			return bytes;
+		}
+
+		misses.incrementAndGet();
+		bytes = Files.readAllBytes(file.toPath());
+		put(key, new Entry(lastModified, length, bytes));
+		return bytes;
+	}
+
+	/**
+	 * Loads the image file into the cache in the background, e.g. the pages
+	 * next to the shown page. Nothing is done if the file is cached already; if
+	 * too many files are waiting, the file is skipped.
+	 *
+	 * @param file the file
+	 */
+	public void prefetch(File file) {
+		if (file == null) {
+			return;
+		}
+		String key = file.getAbsolutePath();
+		if (lookup(key, file.lastModified(), file.length()) != null || !pending.add(key)) {
+			return;
+		}
+
+		try {
+			PREFETCHER.execute(() -> {
+				try {
+					long lastModified = file.lastModified();
+					long length = file.length();
+					if (file.isFile() && lookup(key, lastModified, length) == null) {
+						put(key, new Entry(lastModified, length, Files.readAllBytes(file.toPath())));
+						prefetches.incrementAndGet();
+					}
+				} catch (IOException e) {
+					logger.debug("Error prefetching " + file + ": " + e);
+				} finally {
+					pending.remove(key);
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			pending.remove(key);
+		}
+	}
+
+	/**
+	 * Gets the cached bytes, if the entry matches the file.
+	 *
+	 * @param key          the key
+	 * @param lastModified the last modified time of the file
+	 * @param length       the length of the file
+	 * @return the bytes or null
+	 */
+	private synchronized byte[] lookup(String key, long lastModified, long length) {
+		Entry entry = entries.get(key);
+		if (entry != null && entry.lastModified == lastModified && entry.length == length) {
+			return entry.bytes;
+		}
+		return null;
+	}
+
+	/**
+	 * Puts the entry and evicts the least recently used entries above the
+	 * capacity. Images larger than an eighth of the capacity are not cached.
+	 *
+	 * @param key   the key
+	 * @param entry the entry
+	 */
+	private synchronized void put(String key, Entry entry) {
+		Entry old = entries.remove(key);
+		if (old != null) {
+			size -= old.bytes.length;
+		}
+
+		if (entry.bytes.length > capacity / 8) {
+			return;
+		}
+
+		entries.put(key, entry);
+		size += entry.bytes.length;
+
+		Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+		while (size > capacity && it.hasNext()) {
+			size -= it.next().getValue().bytes.length;
+			it.remove();
+			evictions.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Clear.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		size = 0;
+	}
+
+	/**
+	 * Gets the hits.
+	 *
+	 * @return the hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Gets the misses.
+	 *
+	 * @return the misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Gets the prefetched images.
+	 *
+	 * @return the prefetches
+	 */
+	public long getPrefetches() {
+		return prefetches.get();
+	}
+
+	/**
+	 * Gets the evictions.
+	 *
+	 * @return the evictions
+	 */
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	/**
+	 * Gets the size in bytes.
+	 *
+	 * @return the size
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	/**
+	 * Gets the number of cached images.
+	 *
+	 * @return the count
+	 */
+	public synchronized int getCount() {
+		return entries.size();
+	}
+
+	/**
+	 * Gets the capacity in bytes.
+	 *
+	 * @return the capacity
+	 */
+	public long getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 */
+	@Override
+	public String toString() {
+		return "Image cache: " + getCount() + " images, " + getSize() / 1024 + " of " + capacity / 1024 + " KB, "
+				+ hits + " hits, " + misses + " misses, " + prefetches + " prefetched, " + evictions + " evictions";
+	}
+
+}
@@ -0,0 +1,431 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.console.server;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.rogatio.remarkable.api.io.PropertiesCache;
+
+/**
+ * The Class ImageResizer scales images to a fixed set of widths and keeps the
+ * results in a folder on disk. Requested widths are rounded up to the next
+ * bucket, so a few variants per image serve all clients. When the folder
+ * exceeds its size, the least recently used variants are deleted.
+ */
+public class ImageResizer {
+
+	/** The Constant logger. */
+	private static final Logger logger = LogManager.getLogger(ImageResizer.class);
+
+	/** The Constant WIDTHS. The buckets of the widths. */
+	public static final int[] WIDTHS = { 200, 400, 800, 1200, 1600 };
+
+	/** The Constant FORMAT_PNG. */
+	public static final String FORMAT_PNG = "png";
+
+	/** The Constant FORMAT_JPG. */
+	public static final String FORMAT_JPG = "jpg";
+
+	/** The Constant DEFAULT_SIZE. 256 MB. */
+	private static final long DEFAULT_SIZE = 256L * 1024 * 1024;
+
+	/** The Constant JPG_QUALITY. */
+	private static final float JPG_QUALITY = 0.85f;
+
+	/** The instance. */
+	private static ImageResizer instance;
+
+	/** The folder of the variants. */
+	private final File folder;
+
+	/** The maximum size of the folder in bytes. */
+	private final long capacity;
+
+	/** The size of the folder in bytes, -1 until it was measured. */
+	private long size = -1;
+
+	/** The resizes in progress by variant. */
+	private final SingleFlight<String, File> resizes = new SingleFlight<>();
+
+	/** The last uses of the variants by path. */
+	private final Map<String, Long> used = new ConcurrentHashMap<>();
+
+	/** The widths of the source images by path, with their modification time. */
+	private final Map<String, long[]> widths = new ConcurrentHashMap<>();
+
+	/** The hits. */
+	private final AtomicLong hits = new AtomicLong();
+
+	/** The misses. */
+	private final AtomicLong misses = new AtomicLong();
+
+	/** The evictions. */
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * Instantiates a new image resizer.
+	 *
+	 * @param folder   the folder of the variants
+	 * @param capacity the maximum size of the folder in bytes
+	 */
+	public ImageResizer(File folder, long capacity) {
+		this.folder = folder;
+		this.capacity = capacity;
+	}
+
+	/**
+	 * Gets the shared instance. Folder and size are read from the properties
+	 * {@link ServerConfig#RESIZE_FOLDER} and {@link ServerConfig#RESIZE_SIZE}.
+	 *
+	 * @return the instance
+	 */
+	public static synchronized ImageResizer getInstance() {
+		if (instance == null) {
+			String exportFolder = PropertiesCache.getInstance().getValue(PropertiesCache.EXPORTFOLDER);
+			instance = new ImageResizer(
+					new File(ServerConfig.getValue(ServerConfig.RESIZE_FOLDER,
+							exportFolder + File.separatorChar + ".resized")),
+					ServerConfig.getLong(ServerConfig.RESIZE_SIZE, DEFAULT_SIZE));
+		}
+		return instance;
+	}
+
+	/**
+	 * Rounds the width up to the next bucket.
+	 *
+	 * @param width the requested width
+	 * @return the width of the bucket
+	 */
+	public static int bucket(int width) {
+		for (int bucket : WIDTHS) {
+			if (width <= bucket) {
+				return bucket;
+			}
+		}
+		return WIDTHS[WIDTHS.length - 1];
+	}
+
+	/**
+	 * Gets the width of the image. Only the header of the file is read, the
+	 * width is kept until the file changes.
+	 *
+	 * @param image the image
+	 * @return the width or 0, if the image could not be read
+	 */
+	public int getWidth(File image) {
+		long lastModified = image.lastModified();
+		long[] cached = widths.get(image.getPath());
+		if (cached != null && cached[0] == lastModified) {
+			return (int) cached[1];
+		}
+
+		int width = 0;
+		try (ImageInputStream in = ImageIO.createImageInputStream(image)) {
+			Iterator<ImageReader> readers = in != null ? ImageIO.getImageReaders(in) : null;
+			if (readers != null && readers.hasNext()) {
+				ImageReader reader = readers.next();
+				try {
+					reader.setInput(in);
+					width = reader.getWidth(0);
+				} finally {
+					reader.dispose();
+				}
+			}
+		} catch (IOException e) {
+			logger.debug("Error reading width of " + image + ": " + e);
+		}
+		widths.put(image.getPath(), new long[] { lastModified, width });
+		return width;
+	}
+
+	/**
+	 * Gets the variant of the image with the width of the bucket. The image
+	 * itself is returned for png, if it is not wider than the bucket.
+	 *
+	 * @param image  the image
+	 * @param key    the key of the image, unique for all images
+	 * @param width  the requested width
+	 * @param format the format, png or jpg
+	 * @return the variant
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public File resize(File image, String key, int width, String format) throws IOException {
+		int bucket = bucket(width);
+		if (FORMAT_PNG.equals(format) && getWidth(image) <= bucket) {
+			return image;
+		}
+
+		File variant = getVariant(image, key, bucket, format);
+		if (variant.isFile()) {
+			hits.incrementAndGet();
+			// the modification time stays, it is the validator of the responses
+			used.put(variant.getPath(), System.currentTimeMillis());
+			return variant;
+		}
+
+		try {
+			return resizes.execute(variant.getPath(), () -> {
+				if (!variant.isFile()) {
+					misses.incrementAndGet();
+					write(image, variant, bucket, format);
+				}
+				return variant;
+			});
+		} catch (IOException | RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Checks if the variant of the image with the width of the bucket exists,
+	 * so {@link #resize(File, String, int, String)} does not scale the image.
+	 *
+	 * @param image  the image
+	 * @param key    the key of the image, unique for all images
+	 * @param width  the requested width
+	 * @param format the format, png or jpg
+	 * @return true, if the variant exists
+	 */
+	public boolean isResized(File image, String key, int width, String format) {
+		if (!image.isFile()) {
+			return false;
+		}
+		int bucket = bucket(width);
+		if (FORMAT_PNG.equals(format) && getWidth(image) <= bucket) {
+			return true;
+		}
+		return getVariant(image, key, bucket, format).isFile();
+	}
+
+	/**
+	 * Gets the file of the variant for the version of the image.
+	 *
+	 * @param image  the image
+	 * @param key    the key of the image
+	 * @param bucket the width of the bucket
+	 * @param format the format
+	 * @return the file
+	 */
+	private File getVariant(File image, String key, int bucket, String format) {
+		return new File(folder, key + "-" + Long.toHexString(image.lastModified()) + "-" + bucket + "." + format);
+	}
+
+	/**
+	 * Scales the image and writes the variant.
+	 *
+	 * @param image   the image
+	 * @param variant the variant
+	 * @param width   the width of the variant
+	 * @param format  the format
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void write(File image, File variant, int width, String format) throws IOException {
+		BufferedImage source = ImageIO.read(image);
+		if (source == null) {
+			throw new IOException("Unsupported image " + image);
+		}
+
+		boolean jpg = FORMAT_JPG.equals(format);
+		BufferedImage scaled = scale(source, Math.min(width, source.getWidth()), jpg);
+
+		variant.getParentFile().mkdirs();
+		File tmp = File.createTempFile("resize", ".tmp", variant.getParentFile());
+		try {
+			if (jpg) {
+				ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+				try (ImageOutputStream out = ImageIO.createImageOutputStream(tmp)) {
+					ImageWriteParam param = writer.getDefaultWriteParam();
+					param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+					param.setCompressionQuality(JPG_QUALITY);
+					writer.setOutput(out);
+					writer.write(null, new IIOImage(scaled, null, null), param);
+				} finally {
+					writer.dispose();
+				}
+			} else {
+				ImageIO.write(scaled, FORMAT_PNG, tmp);
+			}
+			Files.move(tmp.toPath(), variant.toPath(), StandardCopyOption.ATOMIC_MOVE,
+					StandardCopyOption.REPLACE_EXISTING);
+		} finally {
+			tmp.delete();
+		}
+
+		used.put(variant.getPath(), System.currentTimeMillis());
+		added(variant.length());
+	}
+
+	/**
+	 * Scales the image to the width. Larger reductions are done in steps of
+	 * half the size, so the bilinear interpolation keeps thin strokes.
+	 *
+	 * @param image the image
+	 * @param width the width
+	 * @param opaque true, if transparent pixels are drawn on white, e.g. for jpg
+	 * @return the scaled image
+	 */
+	static BufferedImage scale(BufferedImage image, int width, boolean opaque) {
+		int height = Math.max(1, (int) Math.round((double) image.getHeight() * width / image.getWidth()));
+		int type = !opaque && image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB
+				: BufferedImage.TYPE_INT_RGB;
+
+		BufferedImage current = image;
+		do {
+			int w = Math.max(width, (current.getWidth() + 1) / 2);
+			int h = w == width ? height : Math.max(height, (current.getHeight() + 1) / 2);
+			BufferedImage next = new BufferedImage(w, h, type);
+			Graphics2D g = next.createGraphics();
+			try {
+				if (type == BufferedImage.TYPE_INT_RGB) {
+					g.setColor(Color.WHITE);
+					g.fillRect(0, 0, w, h);
+				}
+				g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+				g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+				g.drawImage(current, 0, 0, w, h, null);
+			} finally {
+				g.dispose();
+			}
+			current = next;
+		} while (current.getWidth() > width);
+		return current;
+	}
+
+	/**
+	 * Adds the size of a new variant and deletes the least recently used
+	 * variants, if the folder exceeds its size.
+	 *
+	 * @param length the size of the new variant
+	 */
+	private synchronized void added(long length) {
+		if (size < 0) {
+			size = 0;
+			for (File file : list()) {
+				size += file.length();
+			}
+		} else {
+			size += length;
+		}
+
+		if (size <= capacity) {
+			return;
+		}
+
+		// deletes down to nine tenths, so not every new variant runs an eviction
+		List<File> files = list();
+		// variants of a previous run are ordered by their modification time
+		files.sort(Comparator.comparingLong(file -> used.getOrDefault(file.getPath(), file.lastModified())));
+		for (File file : files) {
+			if (size <= capacity / 10 * 9) {
+				break;
+			}
+			long fileLength = file.length();
+			if (file.delete()) {
+				used.remove(file.getPath());
+				size -= fileLength;
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Lists the variants.
+	 *
+	 * @return the variants
+	 */
+	private List<File> list() {
+		if (!folder.isDirectory()) {
+			return new ArrayList<>();
+		}
+		try (Stream<Path> paths = Files.walk(folder.toPath())) {
+			return paths.filter(p -> Files.isRegularFile(p) && !p.getFileName().toString().endsWith(".tmp"))
+					.map(Path::toFile).collect(Collectors.toList());
+		} catch (IOException e) {
+			logger.warn("Error listing " + folder + ": " + e);
+			return new ArrayList<>();
+		}
+	}
+
+	/**
+	 * Gets the hits.
+	 *
+	 * @return the hits
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * Gets the misses.
+	 *
+	 * @return the misses
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Gets the size in bytes, -1 before the first variant was written.
+	 *
+	 * @return the size
+	 */
+	public synchronized long getSize() {
+		return size;
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 */
+	@Override
+	public String toString() {
+		return "Resized images: " + Math.max(0, getSize()) / 1024 + " of " + capacity / 1024 + " KB, " + hits
+				+ " hits, " + misses + " misses, " + evictions + " evictions";
+	}
+
+}
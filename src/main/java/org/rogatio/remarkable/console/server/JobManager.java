@@ -0,0 +1,199 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.console.server;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * The Class JobManager runs the processing jobs one after another on a
+ * background thread. While a job is queued or running, a new request returns
+ * this job instead of starting another one. Other tasks using the remarkable
+ * manager, like exports on demand, run on the same thread, so they never run
+ * at the same time as a job. They are rejected while a job is active, so a
+ * request never waits for a whole job.
+ */
+public class JobManager {
+
+	/** The Constant MAX_FINISHED. Number of finished jobs kept for polling. */
+	private static final int MAX_FINISHED = 20;
+
+	/** The instance. */
+	private static JobManager instance;
+
+	/** The thread of the jobs. */
+	private volatile Thread thread;
+
+	/** The executor. */
+	private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "processing-job");
+		t.setDaemon(true);
+		thread = t;
+		return t;
+	});
+
+	/** The jobs by id in creation order. */
+	private final Map<String, ProcessingJob> jobs = new LinkedHashMap<>();
+
+	/** The active job. */
+	private ProcessingJob active;
+
+	/**
+	 * Instantiates a new job manager.
+	 */
+	private JobManager() {
+	}
+
+	/**
+	 * Gets the single instance of JobManager.
+	 *
+	 * @return single instance of JobManager
+	 */
+	public static synchronized JobManager getInstance() {
+		if (instance == null) {
+			instance = new JobManager();
+		}
+		return instance;
+	}
+
+	/**
+	 * Starts a job or returns the active job.
+	 *
+	 * @param download download the notebooks
+	 * @param read     read the notebooks
+	 * @param export   export the notebooks
+	 * @return the job
+	 */
+	public synchronized ProcessingJob start(boolean download, boolean read, boolean export) {
+		if (active != null && !active.isFinished()) {
+			return active;
+		}
+
+		active = new ProcessingJob(download, read, export);
+		jobs.put(active.getId(), active);
+		removeFinished();
+		executor.execute(active);
+		return active;
+	}
+
+	/**
+	 * Runs a task on the thread of the jobs and waits for its result. Jobs
+	 * started meanwhile wait for the task. Called from the thread of the jobs,
+	 * e.g. by another task, the task runs at once.
+	 *
+	 * @param <T>  the type of the result
+	 * @param task the task
+	 * @return the result
+	 * @throws RejectedExecutionException if a job is queued or running
+	 * @throws Exception the exception of the task
+	 */
+	public <T> T call(Callable<T> task) throws Exception {
+		if (Thread.currentThread() == thread) {
+			return task.call();
+		}
+
+		Future<T> future;
+		synchronized (this) {
+			if (getActive() != null) {
+				throw new RejectedExecutionException("A processing job is running");
+			}
+			future = executor.submit(task);
+		}
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof Exception) {
+				throw (Exception) cause;
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Gets the job.
+	 *
+	 * @param id the id
+	 * @return the job or null
+	 */
+	public synchronized ProcessingJob get(String id) {
+		return id != null ? jobs.get(id) : null;
+	}
+
+	/**
+	 * Gets the active job.
+	 *
+	 * @return the active job or null
+	 */
+	public synchronized ProcessingJob getActive() {
+		return active != null && !active.isFinished() ? active : null;
+	}
+
+	/**
+	 * Gets the jobs.
+	 *
+	 * @return the jobs
+	 */
+	public synchronized List<ProcessingJob> getJobs() {
+		return new ArrayList<>(jobs.values());
+	}
+
+	/**
+	 * Cancels the job.
+	 *
+	 * @param id the id
+	 * @return true, if the job was found and not finished
+	 */
+	public boolean cancel(String id) {
+		ProcessingJob job = get(id);
+		if (job == null || job.isFinished()) {
+			return false;
+		}
+		job.cancel();
+		return true;
+	}
+
+	/**
+	 * Removes the oldest finished jobs above the limit.
+	 */
+	private void removeFinished() {
+		int finished = 0;
+		for (ProcessingJob job : jobs.values()) {
+			if (job.isFinished()) {
+				finished++;
+			}
+		}
+		Iterator<ProcessingJob> it = jobs.values().iterator();
+		while (finished > MAX_FINISHED && it.hasNext()) {
+			if (it.next().isFinished()) {
+				it.remove();
+				finished--;
+			}
+		}
+	}
+
+}
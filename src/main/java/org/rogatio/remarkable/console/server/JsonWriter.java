@@ -0,0 +1,253 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.console.server;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * The Class JsonWriter writes json directly to a writer without building the
+ * document in memory. Commas between values are inserted automatically.
+ */
+public class JsonWriter {
+
+	/** The writer. */
+	private final Writer writer;
+
+	/** The comma flags of the open objects and arrays. */
+	private boolean[] needsComma = new boolean[8];
+
+	/** The depth. */
+	private int depth;
+
+	/** The flag for a written name, which is followed by its value. */
+	private boolean afterName;
+
+	/**
+	 * Instantiates a new json writer.
+	 *
+	 * @param writer the writer
+	 */
+	public JsonWriter(Writer writer) {
+		this.writer = writer;
+	}
+
+	/**
+	 * Begin object.
+	 *
+	 * @return the json writer
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public JsonWriter beginObject() throws IOException {
+		return open('{');
+	}
+
+	/**
+	 * End object.
+	 *
+	 * @return the json writer
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public JsonWriter endObject() throws IOException {
+		return close('}');
+	}
+
+	/**
+	 * Begin array.
+	 *
+	 * @return the json writer
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public JsonWriter beginArray() throws IOException {
+		return open('[');
+	}
+
+	/**
+	 * End array.
+	 *
+	 * @return the json writer
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public JsonWriter endArray() throws IOException {
+		return close(']');
+	}
+
+	/**
+	 * Writes the name of the next object member.
+	 *
+	 * @param name the name
+	 * @return the json writer
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public JsonWriter name(String name) throws IOException {
+		separate();
+		string(name);
+		writer.write(':');
+		afterName = true;
+		return this;
+	}
+
+	/**
+	 * Writes a string value.
+	 *
+	 * @param value the value
+	 * @return the json writer
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public JsonWriter value(String value) throws IOException {
+		if (value == null) {
+			return nullValue();
+		}
+		separate();
+		string(value);
+		return this;
+	}
+
+	/**
+	 * Writes a number value.
+	 *
+	 * @param value the value
+	 * @return the json writer
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public JsonWriter value(long value) throws IOException {
+		separate();
+		writer.write(Long.toString(value));
+		return this;
+	}
+
+	/**
+	 * Writes a boolean value.
+	 *
+	 * @param value the value
+	 * @return the json writer
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public JsonWriter value(boolean value) throws IOException {
+		separate();
+		writer.write(value ? "true" : "false");
+		return this;
+	}
+
+	/**
+	 * Writes a null value.
+	 *
+	 * @return the json writer
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public JsonWriter nullValue() throws IOException {
+		separate();
+		writer.write("null");
+		return this;
+	}
+
+	/**
+	 * Flush.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void flush() throws IOException {
+		writer.flush();
+	}
+
+	/**
+	 * Opens an object or array.
+	 *
+	 * @param bracket the bracket
+	 * @return the json writer
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private JsonWriter open(char bracket) throws IOException {
+		separate();
+		writer.write(bracket);
+		if (++depth == needsComma.length) {
+			boolean[] grown = new boolean[depth * 2];
+			System.arraycopy(needsComma, 0, grown, 0, depth);
+			needsComma = grown;
+		}
+		needsComma[depth] = false;
+		return this;
+	}
+
+	/**
+	 * Closes an object or array.
+	 *
+	 * @param bracket the bracket
+	 * @return the json writer
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private JsonWriter close(char bracket) throws IOException {
+		writer.write(bracket);
+		depth--;
+		return this;
+	}
+
+	/**
+	 * Writes the comma before a value, if needed.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void separate() throws IOException {
+		if (afterName) {
+			afterName = false;
+			return;
+		}
+		if (needsComma[depth]) {
+			writer.write(',');
+		}
+		needsComma[depth] = true;
+	}
+
+	/**
+	 * Writes an escaped string.
+	 *
+	 * @param s the s
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void string(String s) throws IOException {
+		writer.write('"');
+		for (int i = 0; i < s.length(); i++) {
+			char c = s.charAt(i);
+			switch (c) {
+			case '"':
+				writer.write("\\\"");
+				break;
+			case '\\':
+				writer.write("\\\\");
+				break;
+			case '\n':
+				writer.write("\\n");
+				break;
+			case '\r':
+				writer.write("\\r");
+				break;
+			case '\t':
+				writer.write("\\t");
+				break;
+			default:
+				if (c < 0x20 || c == '<' || c == 0x2028 || c == 0x2029) {
+					writer.write(String.format("\\u%04x", (int) c));
+				} else {
+					writer.write(c);
+				}
+			}
+		}
+		writer.write('"');
+	}
+
+}
@@ -0,0 +1,150 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.console.server;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.rogatio.remarkable.api.RemarkableManager;
+import org.rogatio.remarkable.api.model.content.Content;
+
+/**
+ * The Class OnDemandExporter exports a notebook, when a file of it is requested
+ * which was not exported yet. The remarkable api exports a notebook with all
+ * pages and formats at once, so concurrent requests for any file of the same
+ * notebook share one export. A notebook is exported on demand only once per
+ * version; a file which is still missing afterwards, e.g. a hd pdf while the hd
+ * export is disabled, is not exported again. The export runs on the thread of
+ * the processing jobs, so it never uses the remarkable manager at the same
+ * time as a job; while a job is active, the export is rejected with a
+ * {@link RejectedExecutionException}.
+ */
+public class OnDemandExporter {
+
+	/** The Constant logger. */
+	private static final Logger logger = LogManager.getLogger(OnDemandExporter.class);
+
+	/** The instance. */
+	private static OnDemandExporter instance;
+
+	/** The exports in progress by notebook id. */
+	private final SingleFlight<String, Boolean> exports = new SingleFlight<>();
+
+	/** The versions of the notebooks, which were exported on demand. */
+	private final Map<String, Long> exported = new ConcurrentHashMap<>();
+
+	/** The number of exports. */
+	private final AtomicLong count = new AtomicLong();
+
+	/** The enabled flag. */
+	private final boolean enabled;
+
+	/**
+	 * Instantiates a new on demand exporter.
+	 */
+	private OnDemandExporter() {
+		enabled = ServerConfig.getBoolean(ServerConfig.ONDEMAND_EXPORT, true);
+	}
+
+	/**
+	 * Gets the single instance of OnDemandExporter.
+	 *
+	 * @return single instance of OnDemandExporter
+	 */
+	public static synchronized OnDemandExporter getInstance() {
+		if (instance == null) {
+			instance = new OnDemandExporter();
+		}
+		return instance;
+	}
+
+	/**
+	 * Makes sure the exported file of the notebook exists. The notebook is
+	 * exported, if the file is missing and the notebook was not exported on
+	 * demand in its current version.
+	 *
+	 * @param nb   the notebook
+	 * @param file the exported file
+	 * @return true, if the file exists
+	 * @throws RejectedExecutionException if a processing job is active
+	 * @throws Exception the exception of the export
+	 */
+	public boolean export(Content nb, File file) throws Exception {
+		if (file.isFile()) {
+			return true;
+		}
+		if (!enabled) {
+			return false;
+		}
+
+		long version = ContentCatalog.getInstance().getNotebookVersion(nb.getId());
+		Long exportedVersion = exported.get(nb.getId());
+		if (exportedVersion != null && exportedVersion == version) {
+			return false;
+		}
+
+		exports.execute(nb.getId(), () -> {
+			boolean done = JobManager.getInstance().call(() -> {
+				// another export of the notebook may have finished meanwhile
+				if (file.isFile()) {
+					return false;
+				}
+				logger.info("Export notebook '" + nb.getName() + "' on demand");
+				RemarkableManager rm = RemarkableManager.getInstance();
+				rm.exportNotebook(rm.getMetaDataByFolderAndName(ContentCatalog.getFolderAndName(nb)));
+				count.incrementAndGet();
+
+				Precompressor.compressExports(nb);
+				ContentCatalog.getInstance().invalidate();
+				return true;
+			});
+			if (done) {
+				// the export writes new thumbnails, which change the version; the catalog
+				// reads them on the thread of the jobs, so it is asked after the task
+				exported.put(nb.getId(), ContentCatalog.getInstance().getNotebookVersion(nb.getId()));
+			}
+			return done;
+		});
+
+		return file.isFile();
+	}
+
+	/**
+	 * Gets the number of exports.
+	 *
+	 * @return the count
+	 */
+	public long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * Gets the number of requests, which waited for a running export.
+	 *
+	 * @return the shared requests
+	 */
+	public long getShared() {
+		return exports.getShared();
+	}
+
+}
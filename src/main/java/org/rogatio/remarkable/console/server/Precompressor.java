@@ -0,0 +1,158 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.console.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.rogatio.remarkable.api.io.PropertiesCache;
+import org.rogatio.remarkable.api.io.file.Util;
+import org.rogatio.remarkable.api.model.content.Content;
+import org.rogatio.remarkable.api.model.content.Page;
+
+/**
+ * The Class Precompressor writes gzip compressed sidecar files next to the
+ * exported svg files. The embedded server sends a sidecar instead of the svg,
+ * if the client accepts gzip, so the compression is done once after the export
+ * and not on every request.
+ */
+public class Precompressor {
+
+	/** The Constant logger. */
+	private static final Logger logger = LogManager.getLogger(Precompressor.class);
+
+	/** The Constant SUFFIX. */
+	public static final String SUFFIX = ".gz";
+
+	/**
+	 * Instantiates a new precompressor.
+	 */
+	private Precompressor() {
+	}
+
+	/**
+	 * Writes missing or outdated sidecars of all svg files in the export folder.
+	 */
+	public static void compressExports() {
+		if (!ServerConfig.getBoolean(ServerConfig.PRECOMPRESS, true)) {
+			return;
+		}
+
+		File exportFolder = new File(PropertiesCache.getInstance().getValue(PropertiesCache.EXPORTFOLDER));
+		if (!exportFolder.exists()) {
+			return;
+		}
+
+		final int[] count = { 0 };
+		try {
+			Files.walkFileTree(exportFolder.toPath(), new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+					if (file.getFileName().toString().endsWith(".svg") && compress(file.toFile())) {
+						count[0]++;
+					}
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} catch (IOException e) {
+			logger.error("Error compressing exports", e);
+		}
+
+		if (count[0] > 0) {
+			logger.info("Compressed " + count[0] + " svg files");
+		}
+	}
+
+	/**
+	 * Writes missing or outdated sidecars of the svg files of one notebook, e.g.
+	 * after the notebook alone was exported.
+	 *
+	 * @param nb the notebook
+	 */
+	public static void compressExports(Content nb) {
+		if (!ServerConfig.getBoolean(ServerConfig.PRECOMPRESS, true) || nb.getPages() == null) {
+			return;
+		}
+
+		int count = 0;
+		for (Page p : nb.getPages()) {
+			File svg = new File(Util.getFilename(p, "svg"));
+			if (svg.isFile() && compress(svg)) {
+				count++;
+			}
+		}
+
+		if (count > 0) {
+			logger.info("Compressed " + count + " svg files of notebook '" + nb.getName() + "'");
+		}
+	}
+
+	/**
+	 * Writes the sidecar of the file, if it is missing or outdated.
+	 *
+	 * @param file the file
+	 * @return true, if the sidecar was written
+	 */
+	public static boolean compress(File file) {
+		if (getSidecar(file) != null) {
+			return false;
+		}
+
+		File sidecar = new File(file.getPath() + SUFFIX);
+		File tmp = new File(file.getPath() + SUFFIX + ".tmp");
+		try {
+			try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(tmp.toPath()), 8192)) {
+				Files.copy(file.toPath(), out);
+			}
+			// the sidecar is current as long as both modification times are equal
+			tmp.setLastModified(file.lastModified());
+			Files.move(tmp.toPath(), sidecar.toPath(), StandardCopyOption.REPLACE_EXISTING,
+					StandardCopyOption.ATOMIC_MOVE);
+			return true;
+		} catch (IOException e) {
+			logger.error("Error compressing " + file, e);
+			tmp.delete();
+			return false;
+		}
+	}
+
+	/**
+	 * Gets the current sidecar of the file.
+	 *
+	 * @param file the file
+	 * @return the sidecar or null, if it is missing or outdated
+	 */
+	public static File getSidecar(File file) {
+		File sidecar = new File(file.getPath() + SUFFIX);
+		if (sidecar.isFile() && sidecar.lastModified() == file.lastModified()) {
+			return sidecar;
+		}
+		return null;
+	}
+
+}
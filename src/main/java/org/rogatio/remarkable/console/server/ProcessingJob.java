@@ -0,0 +1,309 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.console.server;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.rogatio.remarkable.api.RemarkableManager;
+
+/**
+ * The Class ProcessingJob downloads, reads and exports the notebooks in the
+ * background. The progress is published as server-sent event after every
+ * step. A cancelled job stops before its next step, because the running
+ * step of the remarkable manager can not be interrupted.
+ */
+public class ProcessingJob implements Runnable {
+
+	/** The Constant logger. */
+	private static final Logger logger = LogManager.getLogger(ProcessingJob.class);
+
+	/**
+	 * The Enum State.
+	 */
+	public enum State {
+
+		/** The queued. */
+		QUEUED,
+		/** The running. */
+		RUNNING,
+		/** The done. */
+		DONE,
+		/** The failed. */
+		FAILED,
+		/** The cancelled. */
+		CANCELLED;
+	}
+
+	/**
+	 * The Enum Step.
+	 */
+	public enum Step {
+
+		/** The download. */
+		DOWNLOAD("Download notebooks"),
+		/** The read. */
+		READ("Read notebooks"),
+		/** The export. */
+		EXPORT("Export notebooks");
+
+		/** The description. */
+		private final String description;
+
+		/**
+		 * Instantiates a new step.
+		 *
+		 * @param description the description
+		 */
+		private Step(String description) {
+			this.description = description;
+		}
+
+		/**
+		 * Gets the description.
+		 *
+		 * @return the description
+		 */
+		public String getDescription() {
+			return description;
+		}
+	}
+
+	/** The id. */
+	private final String id = UUID.randomUUID().toString();
+
+	/** The steps. */
+	private final List<Step> steps;
+
+	/** The progress events. */
+	private final EventBroadcaster events = new EventBroadcaster();
+
+	/** The state. */
+	private volatile State state = State.QUEUED;
+
+	/** The current step. */
+	private volatile Step step;
+
+	/** The number of completed steps. */
+	private volatile int completed;
+
+	/** The cancelled flag. */
+	private volatile boolean cancelled;
+
+	/** The error. */
+	private volatile String error;
+
+	/** The created time. */
+	private final long created = System.currentTimeMillis();
+
+	/** The finished time. */
+	private volatile long finished;
+
+	/**
+	 * Instantiates a new processing job.
+	 *
+	 * @param download download the notebooks
+	 * @param read     read the notebooks
+	 * @param export   export the notebooks
+	 */
+	public ProcessingJob(boolean download, boolean read, boolean export) {
+		steps = new ArrayList<>();
+		if (download) {
+			steps.add(Step.DOWNLOAD);
+		}
+		if (read) {
+			steps.add(Step.READ);
+		}
+		if (export) {
+			steps.add(Step.EXPORT);
+		}
+	}
+
+	/**
+	 * Run the steps.
+	 */
+	@Override
+	public void run() {
+		if (cancelled) {
+			finish(State.CANCELLED);
+			return;
+		}
+
+		state = State.RUNNING;
+		RemarkableManager rm = RemarkableManager.getInstance();
+		try {
+			for (Step s : steps) {
+				if (cancelled || Thread.currentThread().isInterrupted()) {
+					finish(State.CANCELLED);
+					return;
+				}
+
+				step = s;
+				fireChanged();
+				logger.info(s.getDescription());
+
+				switch (s) {
+				case DOWNLOAD:
+					rm.downloadContents();
+					break;
+				case READ:
+					rm.readContents();
+					break;
+				case EXPORT:
+					rm.exportNotebooks();
+					Precompressor.compressExports();
+					break;
+				}
+
+				ContentCatalog.getInstance().invalidate();
+				completed++;
+			}
+			finish(State.DONE);
+		} catch (RuntimeException | Error e) {
+			// the job has to end, otherwise it blocks the start of further jobs
+			logger.error("Error processing notebooks", e);
+			error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+			finish(State.FAILED);
+			if (e instanceof Error) {
+				throw (Error) e;
+			}
+		}
+	}
+
+	/**
+	 * Finish the job.
+	 *
+	 * @param finalState the final state
+	 */
+	private void finish(State finalState) {
+		finished = System.currentTimeMillis();
+		state = finalState;
+		step = null;
+		fireChanged();
+		events.close();
+	}
+
+	/**
+	 * Cancels the job before its next step.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Fire changed.
+	 */
+	private void fireChanged() {
+		events.publish("progress", toJson());
+	}
+
+	/**
+	 * Gets the progress events. The streams end when the job is finished.
+	 *
+	 * @return the events
+	 */
+	public EventBroadcaster getEvents() {
+		return events;
+	}
+
+	/**
+	 * Checks if the job is finished.
+	 *
+	 * @return true, if is finished
+	 */
+	public boolean isFinished() {
+		return state != State.QUEUED && state != State.RUNNING;
+	}
+
+	/**
+	 * Gets the id.
+	 *
+	 * @return the id
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * Gets the state.
+	 *
+	 * @return the state
+	 */
+	public State getState() {
+		return state;
+	}
+
+	/**
+	 * Gets the current step.
+	 *
+	 * @return the step or null if the job is not running
+	 */
+	public Step getStep() {
+		return step;
+	}
+
+	/**
+	 * Gets the finished time.
+	 *
+	 * @return the finished time or 0
+	 */
+	public long getFinished() {
+		return finished;
+	}
+
+	/**
+	 * Writes the job as json object.
+	 *
+	 * @param json the json writer
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public void write(JsonWriter json) throws IOException {
+		Step s = step;
+		json.beginObject();
+		json.name("id").value(id);
+		json.name("state").value(state.name());
+		json.name("step").value(s != null ? s.getDescription() : null);
+		json.name("completed").value(completed);
+		json.name("total").value(steps.size());
+		json.name("created").value(created);
+		json.name("finished").value(finished);
+		json.name("error").value(error);
+		json.endObject();
+	}
+
+	/**
+	 * Gets the job as json.
+	 *
+	 * @return the json
+	 */
+	public String toJson() {
+		StringWriter sw = new StringWriter();
+		try {
+			write(new JsonWriter(sw));
+		} catch (IOException e) {
+			// not thrown by a string writer
+		}
+		return sw.toString();
+	}
+
+}
@@ -0,0 +1,186 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.console.server;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.rogatio.remarkable.api.io.PropertiesCache;
+
+/**
+ * The Class ServerConfig reads the optional settings of the embedded server
+ * from the application properties. Every setting has a default, so the
+ * properties only need to contain the values which should be changed.
+ */
+public class ServerConfig {
+
+	/** The Constant logger. */
+	private static final Logger logger = LogManager.getLogger(ServerConfig.class);
+
+	/** The Constant IMAGECACHE_SIZE. Maximum bytes of the image cache. */
+	public static final String IMAGECACHE_SIZE = "server.imagecache.size";
+
+	/** The Constant CATALOG_SCANINTERVAL. Milliseconds between scans of the notebook folder. */
+	public static final String CATALOG_SCANINTERVAL = "server.catalog.scaninterval";
+
+	/** The Constant GZIP. Compress text responses of the server. */
+	public static final String GZIP = "server.gzip";
+
+	/** The Constant PRECOMPRESS. Write gzip sidecars of exported svg files. */
+	public static final String PRECOMPRESS = "server.precompress";
+
+	/** The Constant EVENTS_QUEUESIZE. Queued server-sent events per client. */
+	public static final String EVENTS_QUEUESIZE = "server.events.queuesize";
+
+	/** The Constant EVENTS_HEARTBEAT. Milliseconds between heartbeats of idle event streams. */
+	public static final String EVENTS_HEARTBEAT = "server.events.heartbeat";
+
+	/** The Constant EVENTS_WRITERS. Threads writing the server-sent events. */
+	public static final String EVENTS_WRITERS = "server.events.writers";
+
+	/** The Constant THREADS_MAX. Maximum threads of the request thread pool. */
+	public static final String THREADS_MAX = "server.threads.max";
+
+	/** The Constant THREADS_MIN. Minimum threads of the request thread pool. */
+	public static final String THREADS_MIN = "server.threads.min";
+
+	/** The Constant THREADS_IDLETIMEOUT. Milliseconds until an idle pool thread ends. */
+	public static final String THREADS_IDLETIMEOUT = "server.threads.idletimeout";
+
+	/** The Constant THREADS_VIRTUAL. Handle requests in virtual threads (JDK 21+). */
+	public static final String THREADS_VIRTUAL = "server.threads.virtual";
+
+	/** The Constant ACCEPTORS. Acceptor threads of the connector, -1 for the jetty default. */
+	public static final String ACCEPTORS = "server.acceptors";
+
+	/** The Constant SELECTORS. Selector threads of the connector, -1 for the jetty default. */
+	public static final String SELECTORS = "server.selectors";
+
+	/** The Constant IDLETIMEOUT. Milliseconds until an idle connection is closed. */
+	public static final String IDLETIMEOUT = "server.idletimeout";
+
+	/** The Constant OUTPUTBUFFERSIZE. Bytes of the response buffer. */
+	public static final String OUTPUTBUFFERSIZE = "server.outputbuffersize";
+
+	/** The Constant UNIXSOCKET. Path of a unix domain socket the server listens on. */
+	public static final String UNIXSOCKET = "server.unixsocket";
+
+	/** The Constant TCP. Listen on the tcp port, may be disabled when a unix socket is used. */
+	public static final String TCP = "server.tcp";
+
+	/** The Constant HTTP2. Accept HTTP/2 without TLS (h2c) besides HTTP/1.1. */
+	public static final String HTTP2 = "server.http2";
+
+	/** The Constant HTTP2_MAXSTREAMS. Concurrent requests of a HTTP/2 connection. */
+	public static final String HTTP2_MAXSTREAMS = "server.http2.maxstreams";
+
+	/** The Constant NOTEBOOK_PAGESIZE. Pages shown at once in the notebook view. */
+	public static final String NOTEBOOK_PAGESIZE = "server.notebook.pagesize";
+
+	/** The Constant PREFETCH_DISTANCE. Pages before and after the shown page loaded in the background. */
+	public static final String PREFETCH_DISTANCE = "server.prefetch.distance";
+
+	/** The Constant ONDEMAND_EXPORT. Export a notebook, when a missing export file is downloaded. */
+	public static final String ONDEMAND_EXPORT = "server.ondemand.export";
+
+	/** The Constant TILES_FOLDER. Folder of the deep zoom tiles of the pages. */
+	public static final String TILES_FOLDER = "server.tiles.folder";
+
+	/** The Constant RESIZE_FOLDER. Folder of the resized images. */
+	public static final String RESIZE_FOLDER = "server.resize.folder";
+
+	/** The Constant RESIZE_SIZE. Maximum bytes of the resized images on disk. */
+	public static final String RESIZE_SIZE = "server.resize.size";
+
+	/** The Constant SITE_FOLDER. Folder of the static site rendered from the views. */
+	public static final String SITE_FOLDER = "server.site.folder";
+
+	/** The Constant LIMIT_PREFIX. Prefix of the settings of the admission limits. */
+	public static final String LIMIT_PREFIX = "server.limit.";
+
+	/** The Constant LIMIT_RETRYAFTER. Seconds a rejected client should wait before retrying. */
+	public static final String LIMIT_RETRYAFTER = "server.limit.retryafter";
+
+	/**
+	 * Instantiates a new server config.
+	 */
+	private ServerConfig() {
+	}
+
+	/**
+	 * Gets the value.
+	 *
+	 * @param key          the key
+	 * @param defaultValue the default value
+	 * @return the value
+	 */
+	public static String getValue(String key, String defaultValue) {
+		PropertiesCache properties = PropertiesCache.getInstance();
+		if (!properties.propertyExists(key)) {
+			return defaultValue;
+		}
+		String value = properties.getValue(key);
+		return value != null ? value.trim() : defaultValue;
+	}
+
+	/**
+	 * Gets the long.
+	 *
+	 * @param key          the key
+	 * @param defaultValue the default value
+	 * @return the long
+	 */
+	public static long getLong(String key, long defaultValue) {
+		String value = getValue(key, null);
+		if (value == null || value.isEmpty()) {
+			return defaultValue;
+		}
+		try {
+			return Long.parseLong(value);
+		} catch (NumberFormatException e) {
+			logger.warn("Property '" + key + "' is not a number: " + value);
+			return defaultValue;
+		}
+	}
+
+	/**
+	 * Gets the int.
+	 *
+	 * @param key          the key
+	 * @param defaultValue the default value
+	 * @return the int
+	 */
+	public static int getInt(String key, int defaultValue) {
+		return (int) getLong(key, defaultValue);
+	}
+
+	/**
+	 * Gets the boolean.
+	 *
+	 * @param key          the key
+	 * @param defaultValue the default value
+	 * @return the boolean
+	 */
+	public static boolean getBoolean(String key, boolean defaultValue) {
+		String value = getValue(key, null);
+		if (value == null || value.isEmpty()) {
+			return defaultValue;
+		}
+		return Boolean.parseBoolean(value);
+	}
+
+}
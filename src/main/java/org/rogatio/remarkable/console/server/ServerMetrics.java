@@ -0,0 +1,451 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.console.server;
+
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
+import java.lang.management.ThreadMXBean;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.server.HttpChannel;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.util.thread.ThreadPool;
+
+import jakarta.servlet.ServletRequest;
+
+/**
+ * The Class ServerMetrics counts the requests, errors, latencies and sent bytes
+ * per servlet. A request is started by {@link #begin(ServletRequest, String)}
+ * in the servlet and ended by the {@link HttpChannel.Listener} of the
+ * connector, when the response is complete: the sent bytes are known then and
+ * asynchronous responses like event streams are measured until they end. The
+ * metrics are written in the Prometheus text format or as summary for the
+ * terminal, together with the cache ratios and the heap and threads of the
+ * JVM.
+ */
+public class ServerMetrics {
+
+	/** The Constant ENDPOINT_ATTRIBUTE. */
+	private static final String ENDPOINT_ATTRIBUTE = ServerMetrics.class.getName() + ".endpoint";
+
+	/** The Constant START_ATTRIBUTE. */
+	private static final String START_ATTRIBUTE = ServerMetrics.class.getName() + ".start";
+
+	/** The Constant BUCKETS. Upper bounds of the latency histogram in seconds. */
+	private static final double[] BUCKETS = { 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10 };
+
+	/** The Constant INSTANCE. */
+	private static final ServerMetrics INSTANCE = new ServerMetrics();
+
+	/** The endpoints by servlet name. */
+	private final ConcurrentMap<String, Endpoint> endpoints = new ConcurrentHashMap<>();
+
+	/** The listener of the connectors. */
+	private final HttpChannel.Listener listener = new HttpChannel.Listener() {
+		@Override
+		public void onComplete(Request request) {
+			Object endpoint = request.getAttribute(ENDPOINT_ATTRIBUTE);
+			Object start = request.getAttribute(START_ATTRIBUTE);
+			if (endpoint instanceof Endpoint && start instanceof Long) {
+				((Endpoint) endpoint).end(System.nanoTime() - (Long) start, request.getResponse().getStatus(),
+						request.getHttpChannel().getBytesWritten());
+			}
+		}
+	};
+
+	/** The thread pool of the server. */
+	private volatile ThreadPool threadPool;
+
+	/**
+	 * The Class Endpoint holds the metrics of a servlet.
+	 */
+	public static final class Endpoint {
+
+		/** The requests. */
+		private final LongAdder requests = new LongAdder();
+
+		/** The errors. */
+		private final LongAdder errors = new LongAdder();
+
+		/** The bytes. */
+		private final LongAdder bytes = new LongAdder();
+
+		/** The in flight requests. */
+		private final AtomicInteger inFlight = new AtomicInteger();
+
+		/** The counts per latency bucket, the last one is unbounded. */
+		private final LongAdder[] buckets = new LongAdder[BUCKETS.length + 1];
+
+		/** The sum of the latencies in nanoseconds. */
+		private final LongAdder nanos = new LongAdder();
+
+		/**
+		 * Instantiates a new endpoint.
+		 */
+		private Endpoint() {
+			for (int i = 0; i < buckets.length; i++) {
+				buckets[i] = new LongAdder();
+			}
+		}
+
+		/**
+		 * Ends a request.
+		 *
+		 * @param duration the duration in nanoseconds
+		 * @param status   the status of the response
+		 * @param sent     the sent bytes
+		 */
+		private void end(long duration, int status, long sent) {
+			inFlight.decrementAndGet();
+			requests.increment();
+			if (status >= 500) {
+				errors.increment();
+			}
+			bytes.add(sent);
+			nanos.add(duration);
+
+			double seconds = duration / 1e9;
+			int i = 0;
+			while (i < BUCKETS.length && seconds > BUCKETS[i]) {
+				i++;
+			}
+			buckets[i].increment();
+		}
+
+		/**
+		 * Gets the requests.
+		 *
+		 * @return the requests
+		 */
+		public long getRequests() {
+			return requests.sum();
+		}
+
+		/**
+		 * Gets the errors.
+		 *
+		 * @return the errors
+		 */
+		public long getErrors() {
+			return errors.sum();
+		}
+
+		/**
+		 * Gets the sent bytes.
+		 *
+		 * @return the bytes
+		 */
+		public long getBytes() {
+			return bytes.sum();
+		}
+
+		/**
+		 * Gets the in flight requests.
+		 *
+		 * @return the in flight requests
+		 */
+		public int getInFlight() {
+			return inFlight.get();
+		}
+
+		/**
+		 * Gets the mean latency.
+		 *
+		 * @return the mean latency in seconds
+		 */
+		public double getMeanSeconds() {
+			long count = requests.sum();
+			return count > 0 ? nanos.sum() / 1e9 / count : 0;
+		}
+
+		/**
+		 * Gets the upper bound of the latency bucket, which contains the
+		 * quantile.
+		 *
+		 * @param quantile the quantile, e.g. 0.95
+		 * @return the latency in seconds or infinity, if it is above the last
+		 *         bucket
+		 */
+		public double getQuantileSeconds(double quantile) {
+			long count = 0;
+			long[] counts = new long[buckets.length];
+			for (int i = 0; i < buckets.length; i++) {
+				counts[i] = buckets[i].sum();
+				count += counts[i];
+			}
+
+			long cumulative = 0;
+			for (int i = 0; i < BUCKETS.length; i++) {
+				cumulative += counts[i];
+				if (cumulative >= quantile * count) {
+					return BUCKETS[i];
+				}
+			}
+			return Double.POSITIVE_INFINITY;
+		}
+	}
+
+	/**
+	 * Instantiates new server metrics.
+	 */
+	private ServerMetrics() {
+	}
+
+	/**
+	 * Gets the single instance of ServerMetrics.
+	 *
+	 * @return single instance of ServerMetrics
+	 */
+	public static ServerMetrics getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Begins a request of the servlet.
+	 *
+	 * @param request the request
+	 * @param servlet the name of the servlet
+	 */
+	public void begin(ServletRequest request, String servlet) {
+		if (request.getAttribute(ENDPOINT_ATTRIBUTE) != null) {
+			// an asynchronous dispatch continues the measured request
+			return;
+		}
+		Endpoint endpoint = endpoints.computeIfAbsent(servlet, name -> new Endpoint());
+		endpoint.inFlight.incrementAndGet();
+		request.setAttribute(START_ATTRIBUTE, System.nanoTime());
+		request.setAttribute(ENDPOINT_ATTRIBUTE, endpoint);
+	}
+
+	/**
+	 * Gets the listener, which ends the requests. It is added as bean to the
+	 * connectors.
+	 *
+	 * @return the listener
+	 */
+	public HttpChannel.Listener getListener() {
+		return listener;
+	}
+
+	/**
+	 * Sets the thread pool of the server.
+	 *
+	 * @param threadPool the new thread pool
+	 */
+	public void setThreadPool(ThreadPool threadPool) {
+		this.threadPool = threadPool;
+	}
+
+	/**
+	 * Gets the endpoints ordered by servlet name.
+	 *
+	 * @return the endpoints
+	 */
+	public Map<String, Endpoint> getEndpoints() {
+		return new TreeMap<>(endpoints);
+	}
+
+	/**
+	 * Writes the metrics in the Prometheus text format.
+	 *
+	 * @param out the writer
+	 */
+	public void writePrometheus(PrintWriter out) {
+		Map<String, Endpoint> sorted = getEndpoints();
+
+		header(out, "remarkable_http_requests_total", "counter", "Completed requests per servlet.");
+		for (Map.Entry<String, Endpoint> e : sorted.entrySet()) {
+			sample(out, "remarkable_http_requests_total", e.getKey(), e.getValue().getRequests());
+		}
+		header(out, "remarkable_http_errors_total", "counter", "Requests per servlet answered with a server error.");
+		for (Map.Entry<String, Endpoint> e : sorted.entrySet()) {
+			sample(out, "remarkable_http_errors_total", e.getKey(), e.getValue().getErrors());
+		}
+		header(out, "remarkable_http_sent_bytes_total", "counter", "Bytes sent per servlet.");
+		for (Map.Entry<String, Endpoint> e : sorted.entrySet()) {
+			sample(out, "remarkable_http_sent_bytes_total", e.getKey(), e.getValue().getBytes());
+		}
+		header(out, "remarkable_http_requests_in_flight", "gauge", "Requests per servlet in progress.");
+		for (Map.Entry<String, Endpoint> e : sorted.entrySet()) {
+			sample(out, "remarkable_http_requests_in_flight", e.getKey(), e.getValue().getInFlight());
+		}
+
+		String histogram = "remarkable_http_request_duration_seconds";
+		header(out, histogram, "histogram", "Duration of the requests per servlet.");
+		for (Map.Entry<String, Endpoint> e : sorted.entrySet()) {
+			Endpoint endpoint = e.getValue();
+			String servlet = escape(e.getKey());
+			long cumulative = 0;
+			for (int i = 0; i < endpoint.buckets.length; i++) {
+				cumulative += endpoint.buckets[i].sum();
+				String le = i < BUCKETS.length ? String.valueOf(BUCKETS[i]) : "+Inf";
+				out.println(histogram + "_bucket{servlet=\"" + servlet + "\",le=\"" + le + "\"} " + cumulative);
+			}
+			out.println(histogram + "_sum{servlet=\"" + servlet + "\"} " + endpoint.nanos.sum() / 1e9);
+			out.println(histogram + "_count{servlet=\"" + servlet + "\"} " + cumulative);
+		}
+
+		ImageCache images = ImageCache.getInstance();
+		FragmentCache fragments = FragmentCache.getInstance();
+		header(out, "remarkable_cache_hits_total", "counter", "Cache hits.");
+		out.println("remarkable_cache_hits_total{cache=\"image\"} " + images.getHits());
+		out.println("remarkable_cache_hits_total{cache=\"fragment\"} " + fragments.getHits());
+		header(out, "remarkable_cache_misses_total", "counter", "Cache misses.");
+		out.println("remarkable_cache_misses_total{cache=\"image\"} " + images.getMisses());
+		out.println("remarkable_cache_misses_total{cache=\"fragment\"} " + fragments.getMisses());
+		header(out, "remarkable_cache_hit_ratio", "gauge", "Ratio of the hits to all lookups.");
+		out.println("remarkable_cache_hit_ratio{cache=\"image\"} " + ratio(images.getHits(), images.getMisses()));
+		out.println("remarkable_cache_hit_ratio{cache=\"fragment\"} "
+				+ ratio(fragments.getHits(), fragments.getMisses()));
+		header(out, "remarkable_image_cache_bytes", "gauge", "Bytes of the cached images.");
+		out.println("remarkable_image_cache_bytes " + images.getSize());
+
+		Map<String, AdmissionLimit> limits = AdmissionLimit.getLimits();
+		header(out, "remarkable_admission_running", "gauge", "Running requests per admission limit.");
+		for (AdmissionLimit limit : limits.values()) {
+			out.println("remarkable_admission_running{limit=\"" + limit.getName() + "\"} " + limit.getRunning());
+		}
+		header(out, "remarkable_admission_waiting", "gauge", "Waiting requests per admission limit.");
+		for (AdmissionLimit limit : limits.values()) {
+			out.println("remarkable_admission_waiting{limit=\"" + limit.getName() + "\"} " + limit.getWaiting());
+		}
+		header(out, "remarkable_admission_rejected_total", "counter", "Requests rejected with 503 per admission limit.");
+		for (AdmissionLimit limit : limits.values()) {
+			out.println("remarkable_admission_rejected_total{limit=\"" + limit.getName() + "\"} " + limit.getRejected());
+		}
+
+		MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+		header(out, "jvm_memory_heap_used_bytes", "gauge", "Used heap.");
+		out.println("jvm_memory_heap_used_bytes " + heap.getUsed());
+		header(out, "jvm_memory_heap_committed_bytes", "gauge", "Committed heap.");
+		out.println("jvm_memory_heap_committed_bytes " + heap.getCommitted());
+		header(out, "jvm_memory_heap_max_bytes", "gauge", "Maximum heap.");
+		out.println("jvm_memory_heap_max_bytes " + heap.getMax());
+
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		header(out, "jvm_threads_live", "gauge", "Live threads.");
+		out.println("jvm_threads_live " + threads.getThreadCount());
+		header(out, "jvm_threads_daemon", "gauge", "Live daemon threads.");
+		out.println("jvm_threads_daemon " + threads.getDaemonThreadCount());
+		header(out, "jvm_threads_peak", "gauge", "Peak of the live threads.");
+		out.println("jvm_threads_peak " + threads.getPeakThreadCount());
+
+		ThreadPool pool = threadPool;
+		if (pool != null) {
+			header(out, "remarkable_server_threads", "gauge", "Threads of the server.");
+			out.println("remarkable_server_threads " + pool.getThreads());
+			header(out, "remarkable_server_threads_idle", "gauge", "Idle threads of the server.");
+			out.println("remarkable_server_threads_idle " + pool.getIdleThreads());
+		}
+		out.flush();
+	}
+
+	/**
+	 * Writes the metrics as summary for the terminal.
+	 *
+	 * @param out the writer
+	 */
+	public void writeSummary(PrintWriter out) {
+		out.println(String.format(Locale.ROOT, "%-24s %9s %7s %9s %9s %9s %12s", "Servlet", "Requests", "Errors",
+				"In flight", "Mean ms", "P95 ms", "Sent KB"));
+		for (Map.Entry<String, Endpoint> e : getEndpoints().entrySet()) {
+			Endpoint endpoint = e.getValue();
+			double p95 = endpoint.getQuantileSeconds(0.95);
+			out.println(String.format(Locale.ROOT, "%-24s %9d %7d %9d %9.1f %9s %12d", e.getKey(),
+					endpoint.getRequests(), endpoint.getErrors(), endpoint.getInFlight(),
+					endpoint.getMeanSeconds() * 1000,
+					Double.isInfinite(p95) ? "> " + (long) (BUCKETS[BUCKETS.length - 1] * 1000)
+							: String.valueOf((long) (p95 * 1000)),
+					endpoint.getBytes() / 1024));
+		}
+
+		ImageCache images = ImageCache.getInstance();
+		FragmentCache fragments = FragmentCache.getInstance();
+		out.println(String.format(Locale.ROOT, "Image cache hit ratio %.2f, fragment cache hit ratio %.2f",
+				ratio(images.getHits(), images.getMisses()), ratio(fragments.getHits(), fragments.getMisses())));
+
+		for (AdmissionLimit limit : AdmissionLimit.getLimits().values()) {
+			out.println(limit);
+		}
+
+		MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+		ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		out.println("Heap " + heap.getUsed() / (1024 * 1024) + " of " + heap.getMax() / (1024 * 1024) + " MB, "
+				+ threads.getThreadCount() + " threads (peak " + threads.getPeakThreadCount() + ")");
+
+		ThreadPool pool = threadPool;
+		if (pool != null) {
+			out.println("Server threads " + pool.getThreads() + " (" + pool.getIdleThreads() + " idle)");
+		}
+		out.flush();
+	}
+
+	/**
+	 * Writes the help and type of a metric.
+	 *
+	 * @param out  the writer
+	 * @param name the name
+	 * @param type the type
+	 * @param help the help
+	 */
+	private static void header(PrintWriter out, String name, String type, String help) {
+		out.println("# HELP " + name + " " + help);
+		out.println("# TYPE " + name + " " + type);
+	}
+
+	/**
+	 * Writes a sample of a servlet.
+	 *
+	 * @param out     the writer
+	 * @param name    the name
+	 * @param servlet the servlet
+	 * @param value   the value
+	 */
+	private static void sample(PrintWriter out, String name, String servlet, long value) {
+		out.println(name + "{servlet=\"" + escape(servlet) + "\"} " + value);
+	}
+
+	/**
+	 * Escapes a label value.
+	 *
+	 * @param value the value
+	 * @return the escaped value
+	 */
+	private static String escape(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+	}
+
+	/**
+	 * Gets the ratio of the hits to all lookups.
+	 *
+	 * @param hits   the hits
+	 * @param misses the misses
+	 * @return the ratio
+	 */
+	private static double ratio(long hits, long misses) {
+		return hits + misses > 0 ? (double) hits / (hits + misses) : 0;
+	}
+
+}
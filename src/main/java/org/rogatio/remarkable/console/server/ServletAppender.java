@@ -17,13 +17,10 @@
  */
 package org.rogatio.remarkable.console.server;
 
-import java.io.PrintWriter;
+import java.io.IOException;
 import java.io.Serializable;
-import java.time.Instant;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
+import java.io.StringWriter;
 
-import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.core.Appender;
 import org.apache.logging.log4j.core.Core;
 import org.apache.logging.log4j.core.Filter;
@@ -34,15 +31,19 @@ import org.apache.logging.log4j.core.config.plugins.Plugin;
 import org.apache.logging.log4j.core.config.plugins.PluginAttribute;
 import org.apache.logging.log4j.core.config.plugins.PluginElement;
 import org.apache.logging.log4j.core.config.plugins.PluginFactory;
+import org.rogatio.remarkable.console.terminal.LogBuffer;
+import org.rogatio.remarkable.console.terminal.LogRecord;
 
 /**
- * The Class ServletAppender.
+ * The Class ServletAppender records the log events in the shared
+ * {@link LogBuffer} and publishes them to the clients of the web console. The
+ * buffer keeps an event once, although the terminal appender adds it as well.
  */
 @Plugin(name = "ServletAppender", category = Core.CATEGORY_NAME, elementType = Appender.ELEMENT_TYPE)
 public class ServletAppender extends AbstractAppender {
 
-	/** The event map. */
-	private ConcurrentMap<String, LogEvent> eventMap = new ConcurrentHashMap<>();
+	/** The broadcaster. */
+	private final EventBroadcaster broadcaster = new EventBroadcaster();
 
 	/**
 	 * Instantiates a new terminal appender.
@@ -83,53 +84,61 @@ public class ServletAppender extends AbstractAppender {
 	}
 
 	/**
-	 * Append log to terminal appender.
+	 * Append log to the web console. The event is only queued for the
+	 * subscribers, so a slow client never blocks the logging thread.
 	 *
 	 * @param event the event
 	 */
 	@Override
 	public void append(LogEvent event) {
-		eventMap.put(Instant.now().toString(), event);
+		LogRecord record = LogBuffer.getInstance().add(getName(), event);
 
-		if (writer != null) {
-			String color = getColor(event);
-			writer.println("<font face=\"arial,helvetica\" color=\"" + color + "\"><b>" + event.getLevel() + "</b></font> "+
-					"<font face=\"arial,helvetica\">"+ event.getMessage().getFormattedMessage() + "</font><br>");
-			writer.flush();
+		if (broadcaster.getSubscriberCount() > 0) {
+			broadcaster.publish("log", toJson(record));
 		}
-
 	}
 
-	/** The writer. */
-	private PrintWriter writer;
-
 	/**
-	 * Sets the writer.
+	 * Gets the broadcaster of the log events.
 	 *
-	 * @param pw the new writer
+	 * @return the broadcaster
 	 */
-	public void setWriter(PrintWriter pw) {
-		writer = pw;
+	public EventBroadcaster getBroadcaster() {
+		return broadcaster;
 	}
 
 	/**
-	 * Gets the color.
+	 * Gets the record as json.
 	 *
-	 * @param event the event
-	 * @return the color
+	 * @param record the record
+	 * @return the json
 	 */
-	private String getColor(LogEvent event) {
-		String color = "#000000";
-		if (event.getLevel() == Level.INFO) {
-			color = "#00FF00";
-		} else if (event.getLevel() == Level.WARN) {
-			color = "#FFFF00";
-		} else if (event.getLevel() == Level.ERROR) {
-			color = "#FF0000";
-		} else if (event.getLevel() == Level.DEBUG) {
-			color = "#0000FF";
+	public static String toJson(LogRecord record) {
+		StringWriter sw = new StringWriter();
+		try {
+			write(new JsonWriter(sw), record);
+		} catch (IOException e) {
+			// not thrown by a string writer
 		}
-		return color;
+		return sw.toString();
+	}
+
+	/**
+	 * Writes the record as json object.
+	 *
+	 * @param json   the json writer
+	 * @param record the record
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static void write(JsonWriter json, LogRecord record) throws IOException {
+		json.beginObject();
+		json.name("seq").value(record.getSequence());
+		json.name("time").value(record.getTimeMillis());
+		json.name("level").value(record.getLevel().name());
+		json.name("logger").value(record.getLoggerName());
+		json.name("thread").value(record.getThreadName());
+		json.name("message").value(record.getMessage());
+		json.endObject();
 	}
 
 }
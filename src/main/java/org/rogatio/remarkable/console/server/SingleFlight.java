@@ -0,0 +1,98 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.console.server;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The Class SingleFlight runs a task at most once at the same time per key.
+ * Callers asking for a key, whose task is already running, wait for that task
+ * and share its result or exception instead of starting the task again.
+ *
+ * @param <K> the type of the keys
+ * @param <V> the type of the results
+ */
+public class SingleFlight<K, V> {
+
+	/** The running tasks. */
+	private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+	/** The number of calls, which shared a running task. */
+	private final AtomicLong shared = new AtomicLong();
+
+	/**
+	 * Runs the task or waits for the running task of the key.
+	 *
+	 * @param key  the key
+	 * @param task the task
+	 * @return the result
+	 * @throws Exception the exception of the task
+	 */
+	public V execute(K key, Callable<V> task) throws Exception {
+		CompletableFuture<V> created = new CompletableFuture<>();
+		CompletableFuture<V> running = inFlight.putIfAbsent(key, created);
+
+		if (running != null) {
+			shared.incrementAndGet();
+			try {
+				return running.get();
+			} catch (ExecutionException e) {
+				Throwable cause = e.getCause();
+				if (cause instanceof Exception) {
+					throw (Exception) cause;
+				}
+				throw e;
+			}
+		}
+
+		try {
+			V value = task.call();
+			created.complete(value);
+			return value;
+		} catch (Exception | Error e) {
+			created.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlight.remove(key, created);
+		}
+	}
+
+	/**
+	 * Gets the number of calls, which shared a running task.
+	 *
+	 * @return the shared calls
+	 */
+	public long getShared() {
+		return shared.get();
+	}
+
+	/**
+	 * Gets the number of running tasks.
+	 *
+	 * @return the running tasks
+	 */
+	public int getRunning() {
+		return inFlight.size();
+	}
+
+}
@@ -0,0 +1,643 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.console.server;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.jetty.http.HttpTester;
+import org.eclipse.jetty.server.LocalConnector;
+import org.eclipse.jetty.util.BufferUtil;
+import org.rogatio.remarkable.api.model.content.Content;
+
+/**
+ * The Class SiteGenerator renders the web views into a folder of static files,
+ * which any web server could serve without running the console. Starting at
+ * the home page, every view, image, tile and download linked by a view is
+ * requested from the servlets in the same process and written to a file, e.g.
+ * navigation?notebook=&lt;id&gt;&amp;no=1 to navigation/&lt;id&gt;-1.html.
+ * The links of the views are rewritten to the relative paths of the files.
+ * Links to the dynamic parts of the console, like the export, lead nowhere.
+ * Html, svg and dzi files get a gzip sidecar for servers sending precompressed
+ * files.
+ * <p>
+ * The versions of the rendered notebooks are kept in the file
+ * {@value #STATE} of the folder. A following run renders only the notebooks,
+ * whose version changed, and removes the files of notebooks, which were
+ * deleted. The home page is rendered on every run.
+ */
+public class SiteGenerator {
+
+	/** The Constant logger. */
+	private static final Logger logger = LogManager.getLogger(SiteGenerator.class);
+
+	/** The Constant STATE. The file of the versions of the rendered notebooks. */
+	public static final String STATE = ".site.properties";
+
+	/** The Constant INDEX. The file of the home page. */
+	public static final String INDEX = "index.html";
+
+	/** The Constant VERSION. Suffix of the version of a notebook in the state. */
+	private static final String VERSION = ".version";
+
+	/** The Constant FILES. Suffix of the files of a notebook in the state. */
+	private static final String FILES = ".files";
+
+	/** The Constant TILES. The path of the deep zoom tiles. */
+	private static final String TILES = "tiles/";
+
+	/** The Constant TIMEOUT. Milliseconds a view may take, e.g. with an export on demand. */
+	private static final long TIMEOUT = 600000;
+
+	/** The Constant LINK. Attributes of the views holding links. */
+	private static final Pattern LINK = Pattern.compile("(href|src|srcset|data-dzi)=\"([^\"]*)\"");
+
+	/** The Constant SCHEME. Links with a scheme lead to other sites. */
+	private static final Pattern SCHEME = Pattern.compile("^[a-zA-Z][a-zA-Z0-9+.-]*:");
+
+	/** The Constant SIZE. The size of the image in a dzi descriptor. */
+	private static final Pattern SIZE = Pattern.compile("Width=\"(\\d+)\"\\s+Height=\"(\\d+)\"");
+
+	/** The Constant UNSAFE. Characters, which are replaced in file names. */
+	private static final Pattern UNSAFE = Pattern.compile("[^A-Za-z0-9._-]");
+
+	/** The folder of the site. */
+	private final File folder;
+
+	/** The full flag, which renders unchanged notebooks too. */
+	private final boolean full;
+
+	/** The state of the previous run. */
+	private final Properties previous = new Properties();
+
+	/** The versions of the notebooks by id. */
+	private final Map<String, Long> versions = new HashMap<>();
+
+	/** The written files by notebook id. */
+	private final Map<String, Set<String>> written = new HashMap<>();
+
+	/** The notebooks, of which a file failed with a server error. */
+	private final Set<String> failed = new HashSet<>();
+
+	/** The paths of the requested files. */
+	private final Set<String> seen = new HashSet<>();
+
+	/** The links, which are not requested yet. */
+	private final Deque<String> queue = new ArrayDeque<>();
+
+	/** The connector of the servlets. */
+	private LocalConnector connector;
+
+	/** The number of written files. */
+	private int files;
+
+	/** The number of written bytes. */
+	private long bytes;
+
+	/** The number of rendered notebooks. */
+	private int rendered;
+
+	/** The number of unchanged notebooks. */
+	private int unchanged;
+
+	/** The number of removed notebooks. */
+	private int removed;
+
+	/**
+	 * Instantiates a new site generator.
+	 *
+	 * @param folder the folder of the site
+	 * @param full   true, to render unchanged notebooks too
+	 */
+	public SiteGenerator(File folder, boolean full) {
+		this.folder = folder;
+		this.full = full;
+	}
+
+	/**
+	 * Gets the folder of the site. It is set with
+	 * {@link ServerConfig#SITE_FOLDER} and defaults to the folder site in the
+	 * working directory.
+	 *
+	 * @return the folder
+	 */
+	public static File getDefaultFolder() {
+		return new File(ServerConfig.getValue(ServerConfig.SITE_FOLDER, "site"));
+	}
+
+	/**
+	 * Renders the site.
+	 *
+	 * @throws Exception the exception
+	 */
+	public void generate() throws Exception {
+		long start = System.currentTimeMillis();
+		folder.mkdirs();
+		readState();
+
+		ContentCatalog catalog = ContentCatalog.getInstance();
+		for (Content nb : catalog.getNotebooks()) {
+			versions.put(nb.getId(), catalog.getNotebookVersion(nb.getId()));
+			if (isChanged(nb.getId())) {
+				rendered++;
+			} else {
+				unchanged++;
+				written.put(nb.getId(), getPaths(previous, nb.getId()));
+			}
+		}
+
+		EmbeddedServer server = new EmbeddedServer();
+		connector = server.startLocal();
+		try {
+			enqueue("");
+			while (!queue.isEmpty()) {
+				render(queue.poll());
+			}
+		} finally {
+			server.stop();
+		}
+
+		prune();
+		writeState();
+		logger.info("Rendered " + this + " in " + (System.currentTimeMillis() - start) + " ms");
+	}
+
+	/**
+	 * Checks if the notebook has to be rendered.
+	 *
+	 * @param id the id of the notebook or null for the home page
+	 * @return true, if the notebook is rendered
+	 */
+	private boolean isChanged(String id) {
+		if (id == null || full) {
+			return true;
+		}
+		return !String.valueOf(versions.get(id)).equals(previous.getProperty(id + VERSION));
+	}
+
+	/**
+	 * Adds the link to the queue, if its file is rendered and was not requested
+	 * yet.
+	 *
+	 * @param url the link relative to the root of the server
+	 */
+	private void enqueue(String url) {
+		String path = getPath(url);
+		if (path != null && isChanged(getNotebookId(url)) && seen.add(path)) {
+			queue.add(url);
+		}
+	}
+
+	/**
+	 * Requests the link from the servlets and writes the response to its file.
+	 * The links of views are rewritten and followed, the tiles of a dzi
+	 * descriptor are requested too.
+	 *
+	 * @param url the link relative to the root of the server
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void render(String url) throws IOException {
+		String id = getNotebookId(url);
+		String path = getPath(url);
+
+		HttpTester.Response response;
+		try {
+			ByteBuffer request = BufferUtil.toBuffer("GET /" + url + " HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n",
+					StandardCharsets.ISO_8859_1);
+			response = HttpTester.parseResponse(connector.getResponse(request, TIMEOUT, TimeUnit.MILLISECONDS));
+		} catch (Exception e) {
+			throw new IOException("Error requesting " + url, e);
+		}
+		if (response == null || response.getStatus() != 200) {
+			logger.warn("Skip " + url + ": " + (response == null ? "no response" : "status " + response.getStatus()));
+			// missing files stay missing, but busy servlets are asked again next time
+			if (response == null || response.getStatus() >= 500) {
+				failed.add(id);
+			}
+			return;
+		}
+
+		byte[] content = response.getContentBytes();
+		if (path.endsWith(".html")) {
+			content = rewrite(new String(content, StandardCharsets.UTF_8), path).getBytes(StandardCharsets.UTF_8);
+		} else if (path.endsWith(".dzi")) {
+			enqueueTiles(path, new String(content, StandardCharsets.UTF_8));
+		}
+
+		write(path, content);
+		if (id != null) {
+			written.computeIfAbsent(id, k -> new TreeSet<>()).add(path);
+		}
+	}
+
+	/**
+	 * Rewrites the links of a view to the relative paths of their files and
+	 * adds them to the queue.
+	 *
+	 * @param html the html of the view
+	 * @param path the path of the view
+	 * @return the rewritten html
+	 */
+	private String rewrite(String html, String path) {
+		StringBuilder prefix = new StringBuilder();
+		for (int i = path.indexOf('/'); i >= 0; i = path.indexOf('/', i + 1)) {
+			prefix.append("../");
+		}
+
+		Matcher m = LINK.matcher(html);
+		StringBuffer sb = new StringBuffer();
+		while (m.find()) {
+			String value = m.group(2);
+			String link;
+			if (m.group(1).equals("srcset")) {
+				// candidates are separated by commas and followed by their width
+				StringBuilder candidates = new StringBuilder();
+				for (String candidate : value.split(",\\s*")) {
+					int space = candidate.indexOf(' ');
+					String url = space < 0 ? candidate : candidate.substring(0, space);
+					if (candidates.length() > 0) {
+						candidates.append(", ");
+					}
+					candidates.append(link(url, prefix.toString())).append(space < 0 ? "" : candidate.substring(space));
+				}
+				link = candidates.toString();
+			} else {
+				link = link(value, prefix.toString());
+			}
+			m.appendReplacement(sb, Matcher.quoteReplacement(m.group(1) + "=\"" + link + "\""));
+		}
+		m.appendTail(sb);
+		return sb.toString();
+	}
+
+	/**
+	 * Gets the relative path of the file of a link and adds the link to the
+	 * queue. Anchors and links to other sites are kept.
+	 *
+	 * @param value  the link as written in the attribute
+	 * @param prefix the prefix from the view to the root of the site
+	 * @return the relative path or # for links, which are not rendered
+	 */
+	private String link(String value, String prefix) {
+		if (value.isEmpty() || value.startsWith("#") || value.startsWith("//") || SCHEME.matcher(value).find()) {
+			return value;
+		}
+
+		String url = value.replace("&amp;", "&");
+		while (url.startsWith("/")) {
+			url = url.substring(1);
+		}
+		String path = getPath(url);
+		if (path == null) {
+			return "#";
+		}
+
+		enqueue(url);
+		if (path.startsWith(TILES) && url.indexOf('?') >= 0) {
+			// the viewer appends the version of the descriptor to the tiles
+			return prefix + path + url.substring(url.indexOf('?'));
+		}
+		return prefix + path;
+	}
+
+	/**
+	 * Adds the tiles of all levels of a dzi descriptor to the queue.
+	 *
+	 * @param path       the path of the descriptor
+	 * @param descriptor the descriptor
+	 */
+	private void enqueueTiles(String path, String descriptor) {
+		Matcher m = SIZE.matcher(descriptor);
+		if (!m.find()) {
+			return;
+		}
+		int width = Integer.parseInt(m.group(1));
+		int height = Integer.parseInt(m.group(2));
+		int maxLevel = TilePyramid.getMaxLevel(width, height);
+
+		String base = path.substring(0, path.length() - ".dzi".length()) + "_files/";
+		for (int level = maxLevel; level >= 0; level--) {
+			int scale = 1 << (maxLevel - level);
+			int cols = (((width + scale - 1) / scale) + TilePyramid.TILE_SIZE - 1) / TilePyramid.TILE_SIZE;
+			int rows = (((height + scale - 1) / scale) + TilePyramid.TILE_SIZE - 1) / TilePyramid.TILE_SIZE;
+			for (int col = 0; col < cols; col++) {
+				for (int row = 0; row < rows; row++) {
+					enqueue(base + level + "/" + col + "_" + row + "." + TilePyramid.FORMAT);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Writes the file of the site. Text files get a gzip sidecar.
+	 *
+	 * @param path    the path of the file
+	 * @param content the content
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void write(String path, byte[] content) throws IOException {
+		File file = new File(folder, path);
+		file.getParentFile().mkdirs();
+
+		File tmp = new File(file.getPath() + ".tmp");
+		try (OutputStream out = Files.newOutputStream(tmp.toPath())) {
+			out.write(content);
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+		if (path.endsWith(".html") || path.endsWith(".svg") || path.endsWith(".dzi")) {
+			Precompressor.compress(file);
+		}
+		files++;
+		bytes += content.length;
+	}
+
+	/**
+	 * Removes the files of deleted notebooks and the files of rendered
+	 * notebooks, which were not written again, e.g. of removed pages.
+	 */
+	private void prune() {
+		for (String key : previous.stringPropertyNames()) {
+			if (!key.endsWith(VERSION)) {
+				continue;
+			}
+			String id = key.substring(0, key.length() - VERSION.length());
+			if (!versions.containsKey(id)) {
+				removed++;
+			}
+			Set<String> current = written.containsKey(id) ? written.get(id) : new HashSet<>();
+			for (String path : getPaths(previous, id)) {
+				if (!current.contains(path)) {
+					delete(path);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Deletes a file of the site with its sidecar and the folders left empty.
+	 *
+	 * @param path the path of the file
+	 */
+	private void delete(String path) {
+		File file = new File(folder, path);
+		file.delete();
+		new File(file.getPath() + Precompressor.SUFFIX).delete();
+
+		File parent = file.getParentFile();
+		while (parent != null && !parent.equals(folder) && parent.delete()) {
+			parent = parent.getParentFile();
+		}
+	}
+
+	/**
+	 * Reads the state of the previous run, unless all notebooks are rendered.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void readState() throws IOException {
+		File state = new File(folder, STATE);
+		if (!state.isFile()) {
+			return;
+		}
+		try (InputStream in = Files.newInputStream(state.toPath())) {
+			previous.load(in);
+		}
+	}
+
+	/**
+	 * Writes the versions and files of the notebooks. A notebook, of which a
+	 * file failed with a server error, is rendered again on the next run.
+	 *
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void writeState() throws IOException {
+		Properties state = new Properties();
+		for (Map.Entry<String, Set<String>> entry : written.entrySet()) {
+			String id = entry.getKey();
+			if (versions.containsKey(id) && !failed.contains(id)) {
+				state.setProperty(id + VERSION, String.valueOf(versions.get(id)));
+			}
+			state.setProperty(id + FILES, String.join(",", entry.getValue()));
+		}
+		for (String id : versions.keySet()) {
+			if (!written.containsKey(id) && !failed.contains(id)) {
+				state.setProperty(id + VERSION, String.valueOf(versions.get(id)));
+			}
+		}
+
+		File file = new File(folder, STATE);
+		File tmp = new File(folder, STATE + ".tmp");
+		try (OutputStream out = Files.newOutputStream(tmp.toPath())) {
+			state.store(out, "Rendered notebooks of the site");
+		}
+		Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Gets the files of a notebook in a state.
+	 *
+	 * @param state the state
+	 * @param id    the id of the notebook
+	 * @return the paths of the files
+	 */
+	private static Set<String> getPaths(Properties state, String id) {
+		Set<String> paths = new TreeSet<>();
+		String value = state.getProperty(id + FILES, "");
+		for (String path : value.split(",")) {
+			if (!path.isEmpty()) {
+				paths.add(path);
+			}
+		}
+		return paths;
+	}
+
+	/**
+	 * Gets the id of the notebook of a link.
+	 *
+	 * @param url the link relative to the root of the server
+	 * @return the id or null, if the link belongs to no notebook
+	 */
+	static String getNotebookId(String url) {
+		if (url.startsWith(TILES)) {
+			String[] segments = url.split("/");
+			return segments.length > 1 ? segments[1] : null;
+		}
+		Map<String, String> parameters = getParameters(url);
+		if (parameters.containsKey("notebook")) {
+			return parameters.get("notebook");
+		}
+		return parameters.get("id");
+	}
+
+	/**
+	 * Gets the path of the file of a link. The file is named after the view and
+	 * the values of the parameters, without the version, which is part of the
+	 * notebook version instead. Tiles keep their path.
+	 *
+	 * @param url the link relative to the root of the server
+	 * @return the path or null, if the link is not rendered
+	 */
+	static String getPath(String url) {
+		int query = url.indexOf('?');
+		String view = query < 0 ? url : url.substring(0, query);
+		Map<String, String> parameters = getParameters(url);
+
+		if (view.isEmpty()) {
+			return parameters.isEmpty() ? INDEX : null;
+		}
+		if (view.startsWith(TILES)) {
+			for (String segment : view.split("/")) {
+				if (segment.isEmpty() || segment.startsWith(".") || UNSAFE.matcher(segment).find()) {
+					return null;
+				}
+			}
+			return view;
+		}
+
+		String extension;
+		switch (view) {
+		case "notebook":
+		case "navigation":
+		case "page":
+		case "zoom":
+			extension = "html";
+			break;
+		case "thumbnail":
+			extension = "png";
+			break;
+		case "image":
+			extension = "jpg".equals(parameters.get("format")) ? "jpg" : "png";
+			break;
+		case "download":
+			extension = getDownloadExtension(parameters.get("type"));
+			break;
+		default:
+			extension = null;
+		}
+		if (extension == null || parameters.isEmpty()) {
+			return null;
+		}
+
+		StringBuilder name = new StringBuilder();
+		for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+			if (parameter.getKey().equals("v")) {
+				continue;
+			}
+			if (name.length() > 0) {
+				name.append('-');
+			}
+			name.append(UNSAFE.matcher(parameter.getValue()).replaceAll("_"));
+		}
+		return view + "/" + name + "." + extension;
+	}
+
+	/**
+	 * Gets the extension of a download.
+	 *
+	 * @param type the type of the download
+	 * @return the extension or null, if the type is unknown
+	 */
+	private static String getDownloadExtension(String type) {
+		if (type == null) {
+			return null;
+		}
+		switch (type) {
+		case "pdf":
+		case "pdfhd":
+			return "pdf";
+		case "svg":
+		case "png":
+		case "zip":
+			return type;
+		default:
+			return null;
+		}
+	}
+
+	/**
+	 * Gets the parameters of a link in their order.
+	 *
+	 * @param url the link
+	 * @return the parameters
+	 */
+	private static Map<String, String> getParameters(String url) {
+		Map<String, String> parameters = new LinkedHashMap<>();
+		int query = url.indexOf('?');
+		if (query < 0) {
+			return parameters;
+		}
+		for (String pair : url.substring(query + 1).split("&")) {
+			if (pair.isEmpty()) {
+				continue;
+			}
+			int eq = pair.indexOf('=');
+			try {
+				String key = URLDecoder.decode(eq < 0 ? pair : pair.substring(0, eq), "UTF-8");
+				String value = eq < 0 ? "" : URLDecoder.decode(pair.substring(eq + 1), "UTF-8");
+				parameters.putIfAbsent(key, value);
+			} catch (UnsupportedEncodingException e) {
+				throw new IllegalStateException(e);
+			}
+		}
+		return parameters;
+	}
+
+	/**
+	 * Gets the folder of the site.
+	 *
+	 * @return the folder
+	 */
+	public File getFolder() {
+		return folder;
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 */
+	@Override
+	public String toString() {
+		return files + " files (" + bytes / 1024 + " KB) of " + rendered + " notebooks into " + folder + ", "
+				+ unchanged + " notebooks unchanged, " + removed + " removed";
+	}
+
+}
@@ -0,0 +1,329 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.console.server;
+
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import javax.imageio.ImageIO;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.rogatio.remarkable.api.io.PropertiesCache;
+import org.rogatio.remarkable.api.model.content.Page;
+
+/**
+ * The Class TilePyramid cuts the png of a page into a deep zoom (DZI) pyramid
+ * of 256 pixel tiles. The top level has the resolution of the png, every
+ * level below half of the one above, down to a single pixel. The pyramid is
+ * generated on the first request of a page and kept on disk below the
+ * {@link ServerConfig#TILES_FOLDER}, in a folder per modification time of the
+ * png, so a new export leads to a new pyramid and the old one is removed.
+ */
+public class TilePyramid {
+
+	/** The Constant logger. */
+	private static final Logger logger = LogManager.getLogger(TilePyramid.class);
+
+	/** The Constant TILE_SIZE. */
+	public static final int TILE_SIZE = 256;
+
+	/** The Constant FORMAT. */
+	public static final String FORMAT = "png";
+
+	/** The Constant DESCRIPTOR. Written last, so it marks a complete pyramid. */
+	public static final String DESCRIPTOR = "image.dzi";
+
+	/** The instance. */
+	private static TilePyramid instance;
+
+	/** The folder of the pyramids. */
+	private final File folder;
+
+	/** The generations in progress by folder. */
+	private final SingleFlight<String, File> generations = new SingleFlight<>();
+
+	/** The generated pyramids. */
+	private final AtomicLong generated = new AtomicLong();
+
+	/**
+	 * Instantiates a new tile pyramid.
+	 *
+	 * @param folder the folder of the pyramids
+	 */
+	public TilePyramid(File folder) {
+		this.folder = folder;
+	}
+
+	/**
+	 * Gets the shared instance. The folder is read from the property
+	 * {@link ServerConfig#TILES_FOLDER} and defaults to the folder .tiles in
+	 * the export folder.
+	 *
+	 * @return the instance
+	 */
+	public static synchronized TilePyramid getInstance() {
+		if (instance == null) {
+			String exportFolder = PropertiesCache.getInstance().getValue(PropertiesCache.EXPORTFOLDER);
+			instance = new TilePyramid(new File(ServerConfig.getValue(ServerConfig.TILES_FOLDER,
+					exportFolder + File.separatorChar + ".tiles")));
+		}
+		return instance;
+	}
+
+	/**
+	 * Gets the maximum level of an image, the level with its full resolution.
+	 *
+	 * @param width  the width
+	 * @param height the height
+	 * @return the maximum level
+	 */
+	public static int getMaxLevel(int width, int height) {
+		int max = Math.max(width, height);
+		return max <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(max - 1);
+	}
+
+	/**
+	 * Gets the folder of the current pyramid of the page. The pyramid is
+	 * generated, if it does not exist yet.
+	 *
+	 * @param p the page
+	 * @return the folder or null, if the page has no png
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public File getPyramid(Page p) throws IOException {
+		File png = p.getPng();
+		if (png == null || !png.isFile()) {
+			return null;
+		}
+
+		File pyramid = getFolder(p, png);
+		File pageFolder = pyramid.getParentFile();
+		if (new File(pyramid, DESCRIPTOR).isFile()) {
+			return pyramid;
+		}
+
+		try {
+			return generations.execute(pyramid.getPath(), () -> {
+				if (!new File(pyramid, DESCRIPTOR).isFile()) {
+					generate(png, pageFolder, pyramid);
+				}
+				return pyramid;
+			});
+		} catch (IOException | RuntimeException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new IOException(e);
+		}
+	}
+
+	/**
+	 * Checks if the current pyramid of the page is generated.
+	 *
+	 * @param p the page
+	 * @return true, if the pyramid exists
+	 */
+	public boolean isGenerated(Page p) {
+		File png = p.getPng();
+		return png != null && png.isFile() && new File(getFolder(p, png), DESCRIPTOR).isFile();
+	}
+
+	/**
+	 * Gets a tile of the page.
+	 *
+	 * @param p     the page
+	 * @param level the level
+	 * @param col   the column
+	 * @param row   the row
+	 * @return the tile or null, if the page has no png or the tile is outside
+	 *         of the pyramid
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public File getTile(Page p, int level, int col, int row) throws IOException {
+		File pyramid = getPyramid(p);
+		if (pyramid == null) {
+			return null;
+		}
+		File tile = new File(pyramid, level + File.separator + col + "_" + row + "." + FORMAT);
+		return tile.isFile() ? tile : null;
+	}
+
+	/**
+	 * Gets the folder of the pyramid of the page for the version of the png.
+	 *
+	 * @param p   the page
+	 * @param png the png of the page
+	 * @return the folder
+	 */
+	private File getFolder(Page p, File png) {
+		File pageFolder = new File(folder, p.getNotebook().getId() + File.separatorChar + p.getPageNumber());
+		return new File(pageFolder, Long.toHexString(png.lastModified()));
+	}
+
+	/**
+	 * Generates the pyramid in a temporary folder, which is renamed when all
+	 * tiles are written. Pyramids of older versions of the page are removed.
+	 *
+	 * @param png        the png of the page
+	 * @param pageFolder the folder of the pyramids of the page
+	 * @param pyramid    the folder of the pyramid
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void generate(File png, File pageFolder, File pyramid) throws IOException {
+		long start = System.currentTimeMillis();
+
+		BufferedImage image = ImageIO.read(png);
+		if (image == null) {
+			throw new IOException("Unsupported image " + png);
+		}
+		int width = image.getWidth();
+		int height = image.getHeight();
+		int maxLevel = getMaxLevel(width, height);
+
+		pageFolder.mkdirs();
+		Path tmp = Files.createTempDirectory(pageFolder.toPath(), "tmp");
+		try {
+			BufferedImage level = image;
+			for (int l = maxLevel; l >= 0; l--) {
+				writeTiles(level, new File(tmp.toFile(), String.valueOf(l)));
+				if (l > 0) {
+					level = half(level);
+				}
+			}
+
+			try (Writer out = Files.newBufferedWriter(tmp.resolve(DESCRIPTOR), StandardCharsets.UTF_8)) {
+				out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<Image xmlns=\"http://schemas.microsoft.com/deepzoom/2008\" Format=\""
+						+ FORMAT + "\" Overlap=\"0\" TileSize=\"" + TILE_SIZE + "\"><Size Width=\"" + width
+						+ "\" Height=\"" + height + "\"/></Image>\n");
+			}
+
+			Files.move(tmp, pyramid.toPath(), StandardCopyOption.ATOMIC_MOVE);
+		} finally {
+			delete(tmp);
+		}
+
+		// removes the pyramids of older exports
+		long version = png.lastModified();
+		File[] others = pageFolder.listFiles();
+		if (others != null) {
+			for (File other : others) {
+				try {
+					if (Long.parseLong(other.getName(), 16) < version) {
+						delete(other.toPath());
+					}
+				} catch (NumberFormatException e) {
+					// temporary folder of a running generation
+				}
+			}
+		}
+
+		generated.incrementAndGet();
+		logger.debug("Generated tiles of " + png + " in " + (System.currentTimeMillis() - start) + " ms");
+	}
+
+	/**
+	 * Writes the tiles of a level.
+	 *
+	 * @param level  the image of the level
+	 * @param folder the folder of the level
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static void writeTiles(BufferedImage level, File folder) throws IOException {
+		folder.mkdirs();
+		int cols = (level.getWidth() + TILE_SIZE - 1) / TILE_SIZE;
+		int rows = (level.getHeight() + TILE_SIZE - 1) / TILE_SIZE;
+		for (int col = 0; col < cols; col++) {
+			for (int row = 0; row < rows; row++) {
+				int x = col * TILE_SIZE;
+				int y = row * TILE_SIZE;
+				BufferedImage tile = level.getSubimage(x, y, Math.min(TILE_SIZE, level.getWidth() - x),
+						Math.min(TILE_SIZE, level.getHeight() - y));
+				ImageIO.write(tile, FORMAT, new File(folder, col + "_" + row + "." + FORMAT));
+			}
+		}
+	}
+
+	/**
+	 * Scales the image to half of its size, rounded up.
+	 *
+	 * @param image the image
+	 * @return the scaled image
+	 */
+	private static BufferedImage half(BufferedImage image) {
+		int width = (image.getWidth() + 1) / 2;
+		int height = (image.getHeight() + 1) / 2;
+		BufferedImage half = new BufferedImage(width, height,
+				image.getColorModel().hasAlpha() ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = half.createGraphics();
+		try {
+			g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+			g.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+			g.drawImage(image, 0, 0, width, height, null);
+		} finally {
+			g.dispose();
+		}
+		return half;
+	}
+
+	/**
+	 * Deletes a file or a folder with its content.
+	 *
+	 * @param path the path
+	 */
+	private static void delete(Path path) {
+		if (!Files.exists(path)) {
+			return;
+		}
+		try (Stream<Path> paths = Files.walk(path)) {
+			paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+		} catch (IOException e) {
+			logger.warn("Error deleting " + path + ": " + e);
+		}
+	}
+
+	/**
+	 * Gets the number of generated pyramids.
+	 *
+	 * @return the generated pyramids
+	 */
+	public long getGenerated() {
+		return generated.get();
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 */
+	@Override
+	public String toString() {
+		return "Tile pyramids: " + generated + " generated in " + folder;
+	}
+
+}
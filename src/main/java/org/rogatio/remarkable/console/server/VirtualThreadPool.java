@@ -0,0 +1,180 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.console.server;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+import org.eclipse.jetty.util.thread.ThreadPool;
+import org.eclipse.jetty.util.thread.TryExecutor;
+
+/**
+ * The Class VirtualThreadPool runs every task of the server in a new virtual
+ * thread. A request, which blocks on the disk or on the remarkable api, then
+ * only parks its virtual thread and does not occupy a platform thread. Virtual
+ * threads need JDK 21 or later; the executor is looked up by reflection, so
+ * the console still runs on older JDKs.
+ */
+public class VirtualThreadPool extends AbstractLifeCycle implements ThreadPool, TryExecutor {
+
+	/** The Constant logger. */
+	private static final Logger logger = LogManager.getLogger(VirtualThreadPool.class);
+
+	/** The Constant STOP_TIMEOUT. Milliseconds to wait for running tasks on stop. */
+	private static final long STOP_TIMEOUT = 5000;
+
+	/** The executor. */
+	private final ExecutorService executor;
+
+	/** The number of running tasks. */
+	private final AtomicInteger running = new AtomicInteger();
+
+	/**
+	 * Instantiates a new virtual thread pool.
+	 *
+	 * @param executor the executor, which starts a thread per task
+	 */
+	public VirtualThreadPool(ExecutorService executor) {
+		this.executor = executor;
+	}
+
+	/**
+	 * Creates the virtual thread pool.
+	 *
+	 * @return the virtual thread pool or null, if the JDK has no virtual threads
+	 */
+	public static VirtualThreadPool create() {
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return new VirtualThreadPool((ExecutorService) method.invoke(null));
+		} catch (ReflectiveOperationException e) {
+			logger.debug("Virtual threads are not available: " + e);
+			return null;
+		}
+	}
+
+	/**
+	 * Executes the task in a new virtual thread.
+	 *
+	 * @param task the task
+	 */
+	@Override
+	public void execute(Runnable task) {
+		running.incrementAndGet();
+		try {
+			executor.execute(() -> {
+				try {
+					task.run();
+				} finally {
+					running.decrementAndGet();
+				}
+			});
+		} catch (RuntimeException e) {
+			running.decrementAndGet();
+			throw e;
+		}
+	}
+
+	/**
+	 * Executes the task immediately. A new virtual thread is always available,
+	 * so the task is never rejected while the pool runs.
+	 *
+	 * @param task the task
+	 * @return true, if the task is executed
+	 */
+	@Override
+	public boolean tryExecute(Runnable task) {
+		if (!isRunning()) {
+			return false;
+		}
+		execute(task);
+		return true;
+	}
+
+	/**
+	 * Waits until the pool is stopped.
+	 *
+	 * @throws InterruptedException the interrupted exception
+	 */
+	@Override
+	public void join() throws InterruptedException {
+		while (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+			// wait for the stop
+		}
+	}
+
+	/**
+	 * Gets the number of threads, which are running a task.
+	 *
+	 * @return the threads
+	 */
+	@Override
+	public int getThreads() {
+		return running.get();
+	}
+
+	/**
+	 * Gets the idle threads. Virtual threads are never kept idle.
+	 *
+	 * @return the idle threads
+	 */
+	@Override
+	public int getIdleThreads() {
+		return 0;
+	}
+
+	/**
+	 * Checks if is low on threads. A new virtual thread is always available.
+	 *
+	 * @return false
+	 */
+	@Override
+	public boolean isLowOnThreads() {
+		return false;
+	}
+
+	/**
+	 * Stops the executor and waits for the running tasks.
+	 *
+	 * @throws Exception the exception
+	 */
+	@Override
+	protected void doStop() throws Exception {
+		executor.shutdown();
+		if (!executor.awaitTermination(STOP_TIMEOUT, TimeUnit.MILLISECONDS)) {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * To string.
+	 *
+	 * @return the string
+	 */
+	@Override
+	public String toString() {
+		return "VirtualThreadPool[running=" + running.get() + "]";
+	}
+
+}
@@ -0,0 +1,110 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.console.server;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * The Class ZipStreamer writes files as zip archive to a stream. The files are
+ * read one after the other, so neither a temporary file nor the archive in
+ * memory is needed. Files, which are compressed already, are stored; a stored
+ * entry needs its checksum in advance, which is calculated by reading the file
+ * once more.
+ */
+public class ZipStreamer {
+
+	/** The Constant BUFFER_SIZE. */
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	/**
+	 * Instantiates a new zip streamer.
+	 */
+	private ZipStreamer() {
+	}
+
+	/**
+	 * Writes the files as zip archive.
+	 *
+	 * @param files    the files
+	 * @param compress true to deflate the files, false to store them
+	 * @param out      the stream, which is not closed
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	public static void write(List<File> files, boolean compress, OutputStream out) throws IOException {
+		byte[] buffer = new byte[BUFFER_SIZE];
+
+		ZipOutputStream zip = new ZipOutputStream(out);
+		zip.setLevel(Deflater.DEFAULT_COMPRESSION);
+
+		for (File file : files) {
+			ZipEntry entry = new ZipEntry(file.getName());
+			entry.setTime(file.lastModified());
+
+			if (compress) {
+				entry.setMethod(ZipEntry.DEFLATED);
+			} else {
+				entry.setMethod(ZipEntry.STORED);
+				entry.setSize(file.length());
+				entry.setCompressedSize(file.length());
+				entry.setCrc(crc(file, buffer));
+			}
+
+			zip.putNextEntry(entry);
+			try (InputStream in = new FileInputStream(file)) {
+				int n;
+				while ((n = in.read(buffer)) != -1) {
+					zip.write(buffer, 0, n);
+				}
+			}
+			zip.closeEntry();
+		}
+
+		// writes the central directory without closing the stream
+		zip.finish();
+		zip.flush();
+	}
+
+	/**
+	 * Calculates the checksum of the file.
+	 *
+	 * @param file   the file
+	 * @param buffer the buffer
+	 * @return the checksum
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static long crc(File file, byte[] buffer) throws IOException {
+		CRC32 crc = new CRC32();
+		try (InputStream in = new FileInputStream(file)) {
+			int n;
+			while ((n = in.read(buffer)) != -1) {
+				crc.update(buffer, 0, n);
+			}
+		}
+		return crc.getValue();
+	}
+
+}
@@ -0,0 +1,398 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.console.server.servlet;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.rogatio.remarkable.api.io.PropertiesCache;
+import org.rogatio.remarkable.api.model.content.Content;
+import org.rogatio.remarkable.api.model.content.Page;
+import org.rogatio.remarkable.console.server.ContentCatalog;
+import org.rogatio.remarkable.console.server.JsonWriter;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * The Class ApiServlet answers the notebooks and pages as json for scripts and
+ * other tools.
+ * <ul>
+ * <li>GET /api/notebooks lists the notebooks ordered by id</li>
+ * <li>GET /api/notebooks/{id} returns the notebook</li>
+ * <li>GET /api/notebooks/{id}/pages lists the pages of the notebook</li>
+ * </ul>
+ * Lists return at most limit items and the cursor of the next items, which is
+ * passed as parameter cursor to continue the list; the cursor of the last items
+ * is null. The cursor names the last returned item, so a list continues at the
+ * right place even if notebooks were added or removed meanwhile. The parameter
+ * fields selects the fields of the items, e.g. fields=id,name. The responses
+ * are written while the items are read and are never built as a whole.
+ */
+@WebServlet("/api/*")
+public class ApiServlet extends BaseServlet {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = -4283514826630958371L;
+
+	/** The Constant DEFAULT_LIMIT. */
+	private static final int DEFAULT_LIMIT = 50;
+
+	/** The Constant MAX_LIMIT. */
+	private static final int MAX_LIMIT = 500;
+
+	/** The Constant NOTEBOOK_FIELDS. */
+	private static final List<String> NOTEBOOK_FIELDS = Arrays.asList("id", "name", "folders", "pages", "thumbnail",
+			"view", "exports");
+
+	/** The Constant PAGE_FIELDS. */
+	private static final List<String> PAGE_FIELDS = Arrays.asList("no", "thumbnail", "image", "view", "exports");
+
+	/** The Constant EXPORT_PDF_HD. */
+	private static final boolean EXPORT_PDF_HD = PropertiesCache.getInstance().getBoolean(PropertiesCache.PDFHDEXPORT);
+
+	/** The Constant EXPORT_PDF_ALL. */
+	private static final boolean EXPORT_PDF_ALL = PropertiesCache.getInstance()
+			.getBoolean(PropertiesCache.PDFPAGESMERGED);
+
+	/** The notebooks ordered by id. */
+	private static volatile SortedNotebooks sortedNotebooks = new SortedNotebooks(-1, Collections.emptyList());
+
+	/**
+	 * The Class SortedNotebooks holds the notebooks ordered by id and the
+	 * version of the catalog they were taken from.
+	 */
+	private static final class SortedNotebooks {
+
+		/** The version. */
+		private final long version;
+
+		/** The notebooks. */
+		private final List<Content> notebooks;
+
+		/**
+		 * Instantiates new sorted notebooks.
+		 *
+		 * @param version   the version
+		 * @param notebooks the notebooks
+		 */
+		private SortedNotebooks(long version, List<Content> notebooks) {
+			this.version = version;
+			this.notebooks = notebooks;
+		}
+	}
+
+	/**
+	 * Do get.
+	 *
+	 * @param request  the request
+	 * @param response the response
+	 * @throws ServletException the servlet exception
+	 * @throws IOException      Signals that an I/O exception has occurred.
+	 */
+	protected void doGet(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		String path = request.getPathInfo();
+		String[] parts = path != null ? path.substring(1).split("/") : new String[0];
+
+		if (parts.length == 0 || !"notebooks".equals(parts[0]) || parts.length > 3
+				|| (parts.length == 3 && !"pages".equals(parts[2]))) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		Content nb = null;
+		if (parts.length > 1) {
+			nb = ContentCatalog.getInstance().getContentById(parts[1]);
+			if (nb == null) {
+				response.sendError(HttpServletResponse.SC_NOT_FOUND);
+				return;
+			}
+		}
+
+		Set<String> fields = getFields(request, parts.length == 3 ? PAGE_FIELDS : NOTEBOOK_FIELDS);
+		if (fields == null) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unknown field");
+			return;
+		}
+
+		String cursor;
+		try {
+			cursor = decodeCursor(request.getParameter("cursor"));
+		} catch (IllegalArgumentException e) {
+			response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Invalid cursor");
+			return;
+		}
+		int limit = (int) Math.max(1, Math.min(getLong(request, "limit", DEFAULT_LIMIT), MAX_LIMIT));
+
+		String query = request.getQueryString();
+		if (viewNotModified(request, response, "api", Integer.toHexString(path.hashCode()),
+				Integer.toHexString(query != null ? query.hashCode() : 0))) {
+			return;
+		}
+
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+		JsonWriter json = new JsonWriter(response.getWriter());
+		// the servlet handler of the embedded server has no context path
+		String base = (request.getContextPath() != null ? request.getContextPath() : "") + "/";
+
+		if (parts.length == 1) {
+			writeNotebooks(json, base, fields, cursor, limit);
+		} else if (parts.length == 2) {
+			writeNotebook(json, base, fields, nb);
+		} else {
+			writePages(json, base, fields, nb, cursor, limit);
+		}
+		json.flush();
+	}
+
+	/**
+	 * Writes a list of the notebooks ordered by id.
+	 *
+	 * @param json   the json writer
+	 * @param base   the base of the urls
+	 * @param fields the fields
+	 * @param cursor the id of the notebook before the list or null
+	 * @param limit  the limit
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void writeNotebooks(JsonWriter json, String base, Set<String> fields, String cursor, int limit)
+			throws IOException {
+		List<Content> notebooks = getSortedNotebooks();
+
+		int start = 0;
+		if (cursor != null) {
+			// the first notebook after the cursor, also if it was removed meanwhile
+			int low = 0;
+			int high = notebooks.size();
+			while (low < high) {
+				int mid = (low + high) >>> 1;
+				if (notebooks.get(mid).getId().compareTo(cursor) <= 0) {
+					low = mid + 1;
+				} else {
+					high = mid;
+				}
+			}
+			start = low;
+		}
+		int end = Math.min(start + limit, notebooks.size());
+
+		json.beginObject();
+		json.name("items").beginArray();
+		for (Content nb : notebooks.subList(start, end)) {
+			writeNotebook(json, base, fields, nb);
+		}
+		json.endArray();
+		json.name("next");
+		if (end < notebooks.size()) {
+			json.value(encodeCursor(notebooks.get(end - 1).getId()));
+		} else {
+			json.nullValue();
+		}
+		json.endObject();
+	}
+
+	/**
+	 * Writes the selected fields of the notebook.
+	 *
+	 * @param json   the json writer
+	 * @param base   the base of the urls
+	 * @param fields the fields
+	 * @param nb     the notebook
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void writeNotebook(JsonWriter json, String base, Set<String> fields, Content nb) throws IOException {
+		json.beginObject();
+		if (fields.contains("id")) {
+			json.name("id").value(nb.getId());
+		}
+		if (fields.contains("name")) {
+			json.name("name").value(nb.getName());
+		}
+		if (fields.contains("folders")) {
+			json.name("folders").beginArray();
+			for (String folder : nb.getFolders()) {
+				json.value(folder);
+			}
+			json.endArray();
+		}
+		if (fields.contains("pages")) {
+			json.name("pages").value(nb.getPages().size());
+		}
+		if (fields.contains("thumbnail")) {
+			json.name("thumbnail").value(base + ImageServlet.thumbnailUrl(nb));
+		}
+		if (fields.contains("view")) {
+			json.name("view").value(base + "notebook?id=" + nb.getId());
+		}
+		if (fields.contains("exports")) {
+			json.name("exports").beginObject();
+			if (EXPORT_PDF_ALL) {
+				json.name("pdf").value(base + "download?type=pdf&notebook=" + nb.getId());
+			}
+			if (EXPORT_PDF_HD) {
+				json.name("pdfhd").value(base + "download?type=pdfhd&notebook=" + nb.getId());
+			}
+			json.endObject();
+		}
+		json.endObject();
+	}
+
+	/**
+	 * Writes a list of the pages of the notebook.
+	 *
+	 * @param json   the json writer
+	 * @param base   the base of the urls
+	 * @param fields the fields
+	 * @param nb     the notebook
+	 * @param cursor the number of the page before the list or null
+	 * @param limit  the limit
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void writePages(JsonWriter json, String base, Set<String> fields, Content nb, String cursor, int limit)
+			throws IOException {
+		List<Page> pages = nb.getPages();
+
+		int start = 0;
+		if (cursor != null) {
+			try {
+				start = Math.min(Math.max(0, Integer.parseInt(cursor) + 1), pages.size());
+			} catch (NumberFormatException e) {
+				start = pages.size();
+			}
+		}
+		int end = Math.min(start + limit, pages.size());
+
+		json.beginObject();
+		json.name("total").value(pages.size());
+		json.name("items").beginArray();
+		for (Page p : pages.subList(start, end)) {
+			json.beginObject();
+			if (fields.contains("no")) {
+				json.name("no").value(p.getPageNumber());
+			}
+			if (fields.contains("thumbnail")) {
+				json.name("thumbnail").value(base + ImageServlet.thumbnailUrl(p));
+			}
+			if (fields.contains("image")) {
+				json.name("image").value(base + ImageServlet.pngUrl(p));
+			}
+			if (fields.contains("view")) {
+				json.name("view").value(base + NotebookServlet.navigationUrl(nb, p));
+			}
+			if (fields.contains("exports")) {
+				json.name("exports").beginObject();
+				for (Map.Entry<String, String> download : NotebookServlet.downloads(nb, p).entrySet()) {
+					json.name(download.getKey().toLowerCase()).value(base + download.getValue());
+				}
+				json.endObject();
+			}
+			json.endObject();
+		}
+		json.endArray();
+		json.name("next");
+		if (end < pages.size()) {
+			json.value(encodeCursor(String.valueOf(pages.get(end - 1).getPageNumber())));
+		} else {
+			json.nullValue();
+		}
+		json.endObject();
+	}
+
+	/**
+	 * Gets the notebooks ordered by id. The order is kept until the catalog
+	 * changes.
+	 *
+	 * @return the sorted notebooks
+	 */
+	private static List<Content> getSortedNotebooks() {
+		ContentCatalog catalog = ContentCatalog.getInstance();
+		List<Content> notebooks = catalog.getNotebooks();
+		long version = catalog.getVersion();
+
+		SortedNotebooks sorted = sortedNotebooks;
+		if (sorted.version != version) {
+			List<Content> list = new ArrayList<>(notebooks);
+			list.sort(Comparator.comparing(Content::getId));
+			sorted = new SortedNotebooks(version, Collections.unmodifiableList(list));
+			sortedNotebooks = sorted;
+		}
+		return sorted.notebooks;
+	}
+
+	/**
+	 * Gets the selected fields.
+	 *
+	 * @param request the request
+	 * @param all     all fields of the items
+	 * @return the selected fields or null, if an unknown field is selected
+	 */
+	private static Set<String> getFields(HttpServletRequest request, List<String> all) {
+		String value = request.getParameter("fields");
+		if (value == null || value.trim().isEmpty()) {
+			return new HashSet<>(all);
+		}
+
+		Set<String> fields = new HashSet<>();
+		for (String field : value.split(",")) {
+			field = field.trim();
+			if (!all.contains(field)) {
+				return null;
+			}
+			fields.add(field);
+		}
+		return fields;
+	}
+
+	/**
+	 * Encodes the cursor.
+	 *
+	 * @param value the value
+	 * @return the cursor
+	 */
+	private static String encodeCursor(String value) {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	/**
+	 * Decodes the cursor.
+	 *
+	 * @param cursor the cursor
+	 * @return the value or null, if there is no cursor
+	 * @throws IllegalArgumentException if the cursor is invalid
+	 */
+	private static String decodeCursor(String cursor) {
+		if (cursor == null || cursor.isEmpty()) {
+			return null;
+		}
+		return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+	}
+
+}
@@ -18,12 +18,9 @@
 package org.rogatio.remarkable.console.server.servlet;
 
 import static j2html.TagCreator.a;
-import static j2html.TagCreator.body;
-import static j2html.TagCreator.document;
 import static j2html.TagCreator.footer;
 import static j2html.TagCreator.head;
 import static j2html.TagCreator.header;
-import static j2html.TagCreator.html;
 import static j2html.TagCreator.img;
 import static j2html.TagCreator.rawHtml;
 import static j2html.TagCreator.style;
@@ -31,23 +28,35 @@ import static j2html.TagCreator.title;
 
 import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.PrintWriter;
+import java.io.Reader;
+import java.io.Writer;
 import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
-import org.rogatio.remarkable.api.io.file.Util;
+import org.eclipse.jetty.http.MimeTypes;
+import org.rogatio.remarkable.console.server.AdmissionLimit;
+import org.rogatio.remarkable.console.server.ContentCatalog;
+import org.rogatio.remarkable.console.server.ServerConfig;
+import org.rogatio.remarkable.console.server.ServerMetrics;
 
 import j2html.tags.ContainerTag;
+import j2html.tags.DomContent;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
 /**
- * The Class BaseServlet.
+ * The Class BaseServlet. The html views are streamed to the response writer:
+ * the head of the document is flushed first, so the browser loads the styles
+ * while the content is still written.
  */
 public class BaseServlet extends HttpServlet {
 
@@ -57,17 +66,20 @@ public class BaseServlet extends HttpServlet {
 	/** The style. */
 	protected static ContainerTag style;
 
-	/** The title. */
-	private String title = "";
+	/** The Constant BATCH_SIZE. Number of tiles written between two flushes. */
+	protected static final int BATCH_SIZE = 24;
 
-	static {
-		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+	/** The Constant CACHE_FOREVER. Cache-Control of versioned urls. */
+	protected static final String CACHE_FOREVER = "public, max-age=31536000, immutable";
 
-		InputStream is = classLoader.getResourceAsStream("styles.css");
+	/** The Constant CACHE_REVALIDATE. Cache-Control of urls without version. */
+	protected static final String CACHE_REVALIDATE = "public, no-cache";
 
-		String stylesheet = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8)).lines()
-				.collect(Collectors.joining("\n"));
-		style = style().with(rawHtml(stylesheet));
+	/** The Constant COPY_BUFFER_SIZE. */
+	private static final int COPY_BUFFER_SIZE = 8192;
+
+	static {
+		style = style().with(rawHtml(resource("styles.css")));
 
 		// ALTERNATIVE
 		// File styleFile = new File(classLoader.getResource("styles.css").getFile());
@@ -76,17 +88,149 @@ public class BaseServlet extends HttpServlet {
 	}
 
 	/**
-	 * Render.
+	 * Reads a text resource from the classpath.
+	 *
+	 * @param name the name of the resource
+	 * @return the text
+	 */
+	protected static String resource(String name) {
+		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+
+		InputStream is = classLoader.getResourceAsStream(name);
+
+		return new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8)).lines()
+				.collect(Collectors.joining("\n"));
+	}
+
+	/**
+	 * Render the view as html document.
 	 *
 	 * @param response the response
+	 * @param title the title
 	 * @param ct the ct
 	 * @throws IOException Signals that an I/O exception has occurred.
 	 */
-	protected void render(HttpServletResponse response, ContainerTag ct) throws IOException {
+	protected void render(HttpServletResponse response, String title, ContainerTag ct) throws IOException {
+		PrintWriter out = beginDocument(response, title);
+		ct.render(out);
+		endDocument(out);
+	}
+
+	/**
+	 * Writes the head of the html document and the page header. The written
+	 * part is flushed, so the browser can start to render.
+	 *
+	 * @param response the response
+	 * @param title the title
+	 * @return the writer for the content of the body
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	protected PrintWriter beginDocument(HttpServletResponse response, String title) throws IOException {
 		response.setContentType("text/html");
+		response.setCharacterEncoding("UTF-8");
 		PrintWriter out = response.getWriter();
-		out.println(document(html(head(title(getTitle())), body(style, header(), ct, footer()))));
+		out.write("<!DOCTYPE html><html>");
+		head(title(title)).render(out);
+		out.write("<body>");
+		style.render(out);
+		header().render(out);
+		out.flush();
+		return out;
+	}
+
+	/**
+	 * Writes the page footer and closes the html document.
+	 *
+	 * @param out the writer
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	protected void endDocument(PrintWriter out) throws IOException {
+		footer().render(out);
+		out.println("</body></html>");
+		out.flush();
+	}
 
+	/**
+	 * Writes a tile for each item and flushes the writer after each batch of
+	 * tiles. A tile is created just before it is written.
+	 *
+	 * @param <T> the type of the items
+	 * @param out the writer
+	 * @param items the items
+	 * @param tile the function creating the tile of an item
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	protected <T> void writeBatched(PrintWriter out, List<T> items, Function<T, ? extends DomContent> tile)
+			throws IOException {
+		int count = 0;
+		for (T item : items) {
+			tile.apply(item).render(out);
+			if (++count % BATCH_SIZE == 0) {
+				out.flush();
+			}
+		}
+	}
+
+	/**
+	 * Copies the text file to the writer without loading it as a whole.
+	 *
+	 * @param file the file
+	 * @param out the writer
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	protected static void copy(File file, Writer out) throws IOException {
+		try (Reader in = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8)) {
+			char[] buffer = new char[COPY_BUFFER_SIZE];
+			int n;
+			while ((n = in.read(buffer)) != -1) {
+				out.write(buffer, 0, n);
+			}
+		}
+	}
+
+	/**
+	 * Counts the request in the metrics of the servlet before it is handled.
+	 *
+	 * @param request the request
+	 * @param response the response
+	 * @throws ServletException the servlet exception
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	@Override
+	protected void service(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		ServerMetrics.getInstance().begin(request, getClass().getSimpleName());
+		super.service(request, response);
+	}
+
+	/**
+	 * Admits the request to an expensive endpoint. A rejected request is
+	 * answered with 503 and a Retry-After header. An admitted request must
+	 * release the limit, when it is finished.
+	 *
+	 * @param limit the limit
+	 * @param response the response
+	 * @return true, if the request is admitted
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	protected static boolean admit(AdmissionLimit limit, HttpServletResponse response) throws IOException {
+		if (limit.acquire()) {
+			return true;
+		}
+		unavailable(response);
+		return false;
+	}
+
+	/**
+	 * Answers the request with 503 and a Retry-After header, e.g. when an
+	 * export on demand is rejected while a processing job is running.
+	 *
+	 * @param response the response
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	protected static void unavailable(HttpServletResponse response) throws IOException {
+		response.setHeader("Retry-After", String.valueOf(ServerConfig.getInt(ServerConfig.LIMIT_RETRYAFTER, 5)));
+		response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
 	}
 
 	/**
@@ -102,32 +246,138 @@ public class BaseServlet extends HttpServlet {
 	}
 
 	/**
-	 * Image.
+	 * Image, which is loaded by the browser when it is scrolled into view.
 	 *
-	 * @param imgFile the img file
+	 * @param src the src of the image
 	 * @param href the href
 	 * @return the container tag
 	 */
-	protected ContainerTag image(File imgFile, String href) {
-		return a(img().withSrc(Util.imgToBase64String(imgFile))).withHref(href);
+	protected static ContainerTag image(String src, String href) {
+		return a(img().withSrc(src).attr("loading", "lazy")).withHref(href);
+	}
+
+	/**
+	 * Sets the validators of the response and answers a conditional request
+	 * with 304, if the client already has the current representation. A
+	 * matching If-None-Match takes precedence over If-Modified-Since.
+	 *
+	 * @param request the request
+	 * @param response the response
+	 * @param etag the entity tag
+	 * @param lastModified the last modified time or 0 if unknown
+	 * @return true, if the response is not modified and must not be sent
+	 */
+	protected boolean notModified(HttpServletRequest request, HttpServletResponse response, String etag,
+			long lastModified) {
+		response.setHeader("ETag", etag);
+		if (lastModified > 0) {
+			response.setDateHeader("Last-Modified", lastModified);
+		}
+
+		boolean notModified = false;
+		String ifNoneMatch = request.getHeader("If-None-Match");
+		if (ifNoneMatch != null) {
+			String opaque = opaqueTag(etag);
+			for (String candidate : ifNoneMatch.split(",")) {
+				candidate = candidate.trim();
+				if (candidate.equals("*") || opaqueTag(candidate).equals(opaque)) {
+					notModified = true;
+					break;
+				}
+			}
+		} else if (lastModified > 0) {
+			try {
+				long ifModifiedSince = request.getDateHeader("If-Modified-Since");
+				// http dates have a resolution of seconds
+				notModified = ifModifiedSince >= 0 && lastModified / 1000 <= ifModifiedSince / 1000;
+			} catch (IllegalArgumentException e) {
+				// invalid date is ignored
+			}
+		}
+
+		if (notModified) {
+			response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+		}
+		return notModified;
+	}
+
+	/**
+	 * Gets the opaque tag of an entity tag for the weak comparison.
+	 *
+	 * @param etag the entity tag
+	 * @return the opaque tag
+	 */
+	private static String opaqueTag(String etag) {
+		return etag.startsWith("W/") ? etag.substring(2) : etag;
+	}
+
+	/**
+	 * Answers a conditional request for a html view with 304, if the content
+	 * catalog has not changed since. The weak entity tag is derived from the
+	 * catalog version and the parts identifying the view.
+	 *
+	 * @param request the request
+	 * @param response the response
+	 * @param parts the parts identifying the view
+	 * @return true, if the response is not modified and must not be sent
+	 */
+	protected boolean viewNotModified(HttpServletRequest request, HttpServletResponse response, Object... parts) {
+		long version = ContentCatalog.getInstance().getVersion();
+
+		StringBuilder etag = new StringBuilder("W/\"").append(Long.toHexString(version));
+		for (Object part : parts) {
+			etag.append('-').append(part);
+		}
+		etag.append('"');
+
+		// views are always revalidated, the validators make this cheap
+		response.setHeader("Cache-Control", "no-cache");
+		return notModified(request, response, etag.toString(), version);
+	}
+
+	/**
+	 * Gets a numeric parameter.
+	 *
+	 * @param request the request
+	 * @param name the name
+	 * @param def the default value
+	 * @return the value or the default value, if it is missing or invalid
+	 */
+	protected static long getLong(HttpServletRequest request, String name, long def) {
+		String value = request.getParameter(name);
+		if (value == null) {
+			return def;
+		}
+		try {
+			return Math.max(0, Long.parseLong(value));
+		} catch (NumberFormatException e) {
+			return def;
+		}
 	}
 
 	/**
-	 * Gets the title.
+	 * Gets the mime type of the file. The default mime types of jetty are used,
+	 * if the servlet context has no mapping.
 	 *
-	 * @return the title
+	 * @param file the file
+	 * @return the mime type
 	 */
-	protected String getTitle() {
-		return this.title;
+	protected String getMimeType(File file) {
+		String mimeType = getServletContext().getMimeType(file.getName());
+		if (mimeType == null) {
+			mimeType = MimeTypes.getDefaultMimeByExtension(file.getName());
+		}
+		return mimeType;
 	}
 
 	/**
-	 * Sets the title.
+	 * Gets the entity tag of the file from its modification time and size.
 	 *
-	 * @param title the new title
+	 * @param file the file
+	 * @return the entity tag
 	 */
-	protected void setTitle(String title) {
-		this.title = title;
+	protected static String etag(File file) {
+		return "\"" + Long.toHexString(file.lastModified()) + "-" + Long.toHexString(file.length()) + "\"";
 	}
 
 }
@@ -0,0 +1,60 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.console.server.servlet;
+
+import java.io.IOException;
+
+import org.rogatio.remarkable.console.server.CatalogEvents;
+import org.rogatio.remarkable.console.server.ContentCatalog;
+import org.rogatio.remarkable.console.server.EventBroadcaster;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * The Class CatalogEventServlet streams the changes of the notebooks as
+ * server-sent events of the {@link CatalogEvents}. The stream starts with the
+ * event version, which carries the current version of the catalog, so a client
+ * could detect changes it missed while it was not connected.
+ */
+@WebServlet(urlPatterns = "/events", asyncSupported = true)
+public class CatalogEventServlet extends BaseServlet {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = -8532164073650117902L;
+
+	/**
+	 * Do get.
+	 *
+	 * @param request  the request
+	 * @param response the response
+	 * @throws ServletException the servlet exception
+	 * @throws IOException      Signals that an I/O exception has occurred.
+	 */
+	protected void doGet(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		EventBroadcaster broadcaster = CatalogEvents.getInstance().getBroadcaster();
+		EventBroadcaster.Subscriber subscriber = broadcaster.subscribe(request, response);
+		broadcaster.send(subscriber, "version",
+				"{\"version\":" + ContentCatalog.getInstance().getVersion() + "}");
+		broadcaster.start(subscriber);
+	}
+
+}
@@ -18,24 +18,47 @@
 package org.rogatio.remarkable.console.server.servlet;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
 
-import org.rogatio.remarkable.api.RemarkableManager;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.eclipse.jetty.server.HttpOutput;
 import org.rogatio.remarkable.api.io.PropertiesCache;
 import org.rogatio.remarkable.api.io.file.Util;
 import org.rogatio.remarkable.api.model.content.Content;
 import org.rogatio.remarkable.api.model.content.Page;
+import org.rogatio.remarkable.console.server.AdmissionLimit;
+import org.rogatio.remarkable.console.server.ByteRange;
+import org.rogatio.remarkable.console.server.ContentCatalog;
+import org.rogatio.remarkable.console.server.OnDemandExporter;
+import org.rogatio.remarkable.console.server.Precompressor;
+import org.rogatio.remarkable.console.server.ZipStreamer;
 
-import jakarta.servlet.ServletContext;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
 /**
- * The Class DownloadPageServlet.
+ * The Class DownloadPageServlet sends exported files. The files are streamed
+ * from a file channel, so the heap usage is constant for any file size. Single
+ * and multiple byte ranges are supported to seek inside large pdf files. A
+ * file, which was not exported yet, is exported on demand by the
+ * {@link OnDemandExporter}. With type=zip and format=svg, png, pdf or pdfhd
+ * the files of all pages of the notebook are streamed as one zip archive.
+ * Archives, hd pdf files and exports on demand are limited by the
+ * {@link AdmissionLimit#EXPORT}.
  */
 @WebServlet("/page/download")
 public class DownloadPageServlet extends BaseServlet {
@@ -43,6 +66,18 @@ public class DownloadPageServlet extends BaseServlet {
 	/** The Constant serialVersionUID. */
 	private static final long serialVersionUID = 4791464950094086863L;
 
+	/** The Constant logger. */
+	private static final Logger logger = LogManager.getLogger(DownloadPageServlet.class);
+
+	/** The Constant TYPE_ZIP. */
+	private static final String TYPE_ZIP = "zip";
+
+	/** The Constant TYPE_PDFHD. */
+	private static final String TYPE_PDFHD = "pdfhd";
+
+	/** The Constant FORMATS. Formats of the export files of a page. */
+	private static final List<String> FORMATS = Arrays.asList("svg", "png", "pdf", TYPE_PDFHD);
+
 	/**
 	 * Do get.
 	 *
@@ -53,17 +88,44 @@ public class DownloadPageServlet extends BaseServlet {
 	 */
 	protected void doGet(HttpServletRequest request, HttpServletResponse response)
 			throws ServletException, IOException {
+		send(request, response, true);
+	}
+
+	/**
+	 * Do head.
+	 *
+	 * @param request the request
+	 * @param response the response
+	 * @throws ServletException the servlet exception
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	protected void doHead(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		send(request, response, false);
+	}
 
-		RemarkableManager rm = RemarkableManager.getInstance();
+	/**
+	 * Gets the requested export file.
+	 *
+	 * @param request the request
+	 * @param nb the notebook
+	 * @return the file or null if the request has no valid type or page
+	 */
+	private File getFile(HttpServletRequest request, Content nb) {
 		String type = request.getParameter("type");
-		Content nb = rm.getContentById(request.getParameter("notebook"));
 
-		String no = request.getParameter("no");
+		// other types never exist, but would start an export on demand
+		if (type == null || nb == null || !FORMATS.contains(type)) {
+			return null;
+		}
 
-		Page p = null;
 		String filePath = null;
-		if (no != null) {
-			p = nb.getPage(Integer.parseInt(request.getParameter("no")));
+		if (request.getParameter("no") != null) {
+			long no = getLong(request, "no", -1);
+			if (no < 0 || no >= nb.getPages().size()) {
+				return null;
+			}
+			Page p = nb.getPage((int) no);
 
 			if (!type.equals("pdfhd")) {
 				filePath = Util.getFilename(p, type);
@@ -92,42 +154,299 @@ public class DownloadPageServlet extends BaseServlet {
 			}
 		}
 
+		return filePath != null ? new File(filePath) : null;
+	}
+
+	/**
+	 * Sends the export file or the zip archive. Expensive downloads have to
+	 * pass the admission limit {@link AdmissionLimit#EXPORT}.
+	 *
+	 * @param request the request
+	 * @param response the response
+	 * @param content true to send the content
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void send(HttpServletRequest request, HttpServletResponse response, boolean content)
+			throws IOException {
+
 		// reads input file from an absolute path
-		File downloadFile = new File(filePath);
-		FileInputStream inStream = new FileInputStream(downloadFile);
+		Content nb = ContentCatalog.getInstance().getContentById(request.getParameter("notebook"));
+		boolean zip = nb != null && TYPE_ZIP.equals(request.getParameter("type"));
+
+		File downloadFile = zip ? null : getFile(request, nb);
+		if (!zip && downloadFile == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
 
-		// obtains ServletContext
-		ServletContext context = getServletContext();
+		// archives, hd pdf files and exports on demand are limited, other files are sent at once
+		boolean expensive = zip || TYPE_PDFHD.equals(request.getParameter("type")) || !downloadFile.isFile();
+		AdmissionLimit limit = expensive ? AdmissionLimit.get(AdmissionLimit.EXPORT) : null;
+		if (limit != null && !admit(limit, response)) {
+			return;
+		}
+
+		try {
+			if (zip) {
+				sendZip(request, response, content, nb);
+			} else {
+				sendFile(request, response, content, nb, downloadFile);
+			}
+		} finally {
+			if (limit != null) {
+				limit.release();
+			}
+		}
+	}
+
+	/**
+	 * Sends the headers and, if requested, the content of the export file.
+	 *
+	 * @param request the request
+	 * @param response the response
+	 * @param content true to send the content
+	 * @param nb the notebook
+	 * @param downloadFile the export file
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void sendFile(HttpServletRequest request, HttpServletResponse response, boolean content, Content nb,
+			File downloadFile) throws IOException {
+
+		// a file, which was not exported yet, is exported now
+		try {
+			if (!OnDemandExporter.getInstance().export(nb, downloadFile)) {
+				response.sendError(HttpServletResponse.SC_NOT_FOUND);
+				return;
+			}
+		} catch (RejectedExecutionException e) {
+			unavailable(response);
+			return;
+		} catch (Exception e) {
+			logger.error("Error exporting notebook '" + nb.getName() + "'", e);
+			response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+			return;
+		}
 
 		// gets MIME type of the file
-		String mimeType = context.getMimeType(filePath);
+		String mimeType = getMimeType(downloadFile);
 		if (mimeType == null) {
 			// set to binary type if MIME mapping not found
 			mimeType = "application/octet-stream";
 		}
-		// System.out.println("MIME type: " + mimeType);
-
-		// modifies response
-		response.setContentType(mimeType);
-		response.setContentLength((int) downloadFile.length());
 
 		// forces download
-		String headerKey = "Content-Disposition";
-		String headerValue = String.format("attachment; filename=\"%s\"", downloadFile.getName());
-		response.setHeader(headerKey, headerValue);
+		response.setHeader("Content-Disposition", contentDisposition(downloadFile.getName()));
+		response.setHeader("Accept-Ranges", "bytes");
+
+		// sends the precompressed sidecar of a svg file
+		File sidecar = downloadFile.getName().endsWith(".svg") ? Precompressor.getSidecar(downloadFile) : null;
+		if (sidecar != null) {
+			response.setHeader("Vary", "Accept-Encoding");
+			if (acceptsGzip(request)) {
+				response.setHeader("Content-Encoding", "gzip");
+				downloadFile = sidecar;
+			}
+		}
 
-		// obtains response's output stream
-		OutputStream outStream = response.getOutputStream();
+		long length = downloadFile.length();
+		String etag = etag(downloadFile);
 
-		byte[] buffer = new byte[4096];
-		int bytesRead = -1;
+		if (notModified(request, response, etag, downloadFile.lastModified())) {
+			return;
+		}
 
-		while ((bytesRead = inStream.read(buffer)) != -1) {
-			outStream.write(buffer, 0, bytesRead);
+		// ranges of a changed file are ignored
+		List<ByteRange> ranges = null;
+		String ifRange = request.getHeader("If-Range");
+		if (ifRange == null || ifRange.equals(etag)) {
+			ranges = ByteRange.parse(request.getHeader("Range"), length);
 		}
 
-		inStream.close();
-		outStream.close();
+		if (ranges != null && ranges.isEmpty()) {
+			response.setStatus(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+			response.setHeader("Content-Range", "bytes */" + length);
+			return;
+		}
+
+		try (FileChannel channel = FileChannel.open(downloadFile.toPath(), StandardOpenOption.READ)) {
+			if (ranges == null) {
+				response.setContentType(mimeType);
+				response.setContentLengthLong(length);
+				if (content) {
+					OutputStream out = response.getOutputStream();
+					if (out instanceof HttpOutput) {
+						// jetty sends the channel with pooled direct buffers
+						((HttpOutput) out).sendContent(channel);
+					} else {
+						transfer(channel, 0, length, Channels.newChannel(out));
+					}
+				}
+			} else if (ranges.size() == 1) {
+				ByteRange range = ranges.get(0);
+				response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+				response.setContentType(mimeType);
+				response.setHeader("Content-Range", range.toContentRange(length));
+				response.setContentLengthLong(range.getLength());
+				if (content) {
+					transfer(channel, range.getFirst(), range.getLength(),
+							Channels.newChannel(response.getOutputStream()));
+				}
+			} else {
+				String boundary = UUID.randomUUID().toString();
+				byte[][] partHeaders = new byte[ranges.size()][];
+				byte[] end = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.ISO_8859_1);
+
+				long contentLength = end.length;
+				for (int i = 0; i < ranges.size(); i++) {
+					ByteRange range = ranges.get(i);
+					partHeaders[i] = ("\r\n--" + boundary + "\r\nContent-Type: " + mimeType + "\r\nContent-Range: "
+							+ range.toContentRange(length) + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+					contentLength += partHeaders[i].length + range.getLength();
+				}
+
+				response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+				response.setContentType("multipart/byteranges; boundary=" + boundary);
+				response.setContentLengthLong(contentLength);
+				if (content) {
+					OutputStream out = response.getOutputStream();
+					WritableByteChannel target = Channels.newChannel(out);
+					for (int i = 0; i < ranges.size(); i++) {
+						out.write(partHeaders[i]);
+						transfer(channel, ranges.get(i).getFirst(), ranges.get(i).getLength(), target);
+					}
+					out.write(end);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sends the files of a format of all pages as zip archive. Pages, which were
+	 * not exported yet, are exported on demand first. Png and pdf files are
+	 * stored, because they are compressed already; svg files are deflated.
+	 *
+	 * @param request the request
+	 * @param response the response
+	 * @param content false, if only the headers are sent
+	 * @param nb the notebook
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void sendZip(HttpServletRequest request, HttpServletResponse response, boolean content, Content nb)
+			throws IOException {
+		String format = request.getParameter("format");
+		if (!FORMATS.contains(format)) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		List<File> files = new ArrayList<>();
+		for (Page p : nb.getPages()) {
+			files.add(new File("pdfhd".equals(format) ? Util.getFilename(p, "_HD", "pdf") : Util.getFilename(p, format)));
+		}
+
+		for (File file : files) {
+			if (!file.isFile()) {
+				try {
+					// one export writes the files of all pages
+					OnDemandExporter.getInstance().export(nb, file);
+				} catch (RejectedExecutionException e) {
+					unavailable(response);
+					return;
+				} catch (Exception e) {
+					logger.error("Error exporting notebook '" + nb.getName() + "'", e);
+				}
+				break;
+			}
+		}
+		files.removeIf(file -> !file.isFile());
+
+		if (files.isEmpty()) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		response.setContentType("application/zip");
+		response.setHeader("Content-Disposition", contentDisposition(nb.getName() + "_" + format + ".zip"));
+		response.setHeader("Cache-Control", "no-cache");
+
+		if (content) {
+			ZipStreamer.write(files, "svg".equals(format), response.getOutputStream());
+		}
+	}
+
+	/**
+	 * Gets the Content-Disposition header of an attachment. The quoted filename
+	 * holds the name in ascii with escaped quotes for old clients, the
+	 * filename* parameter (RFC 5987) the exact name in UTF-8.
+	 *
+	 * @param filename the filename
+	 * @return the header value
+	 */
+	static String contentDisposition(String filename) {
+		StringBuilder ascii = new StringBuilder();
+		for (char c : filename.toCharArray()) {
+			if (c == '"' || c == '\\') {
+				ascii.append('\\').append(c);
+			} else if (c < 0x20 || c > 0x7e) {
+				ascii.append('_');
+			} else {
+				ascii.append(c);
+			}
+		}
+
+		StringBuilder encoded = new StringBuilder();
+		for (byte b : filename.getBytes(StandardCharsets.UTF_8)) {
+			char c = (char) (b & 0xff);
+			if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+					|| "!#$&+-.^_`|~".indexOf(c) >= 0) {
+				encoded.append(c);
+			} else {
+				encoded.append('%').append(String.format("%02X", b & 0xff));
+			}
+		}
+
+		return "attachment; filename=\"" + ascii + "\"; filename*=UTF-8''" + encoded;
+	}
+
+	/**
+	 * Checks if the client accepts a gzip encoded response.
+	 *
+	 * @param request the request
+	 * @return true, if gzip is accepted
+	 */
+	private static boolean acceptsGzip(HttpServletRequest request) {
+		String acceptEncoding = request.getHeader("Accept-Encoding");
+		if (acceptEncoding == null) {
+			return false;
+		}
+		for (String coding : acceptEncoding.split(",")) {
+			String[] parts = coding.trim().split(";");
+			if (parts[0].trim().equalsIgnoreCase("gzip")) {
+				return parts.length == 1 || !parts[1].trim().replace(" ", "").matches("q=0(\\.0*)?");
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Transfers bytes of the file channel to the target channel.
+	 *
+	 * @param channel the file channel
+	 * @param position the position of the first byte
+	 * @param count the number of bytes
+	 * @param target the target
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private static void transfer(FileChannel channel, long position, long count, WritableByteChannel target)
+			throws IOException {
+		while (count > 0) {
+			long transferred = channel.transferTo(position, count, target);
+			if (transferred <= 0) {
+				throw new IOException("File ended before all bytes were sent");
+			}
+			position += transferred;
+			count -= transferred;
+		}
 	}
 
 }
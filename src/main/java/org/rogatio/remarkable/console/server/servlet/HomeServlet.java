@@ -24,11 +24,15 @@ import static j2html.TagCreator.each;
 import static j2html.TagCreator.main;
 
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
-import org.rogatio.remarkable.api.RemarkableManager;
 import org.rogatio.remarkable.api.io.PropertiesCache;
 import org.rogatio.remarkable.api.model.content.Content;
+import org.rogatio.remarkable.console.server.ContentCatalog;
+import org.rogatio.remarkable.console.server.FragmentCache;
 
 import j2html.tags.ContainerTag;
 import jakarta.servlet.ServletException;
@@ -38,7 +42,9 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
 /**
- * The Class HomeServlet.
+ * The Class HomeServlet shows a tile per notebook. The page follows the
+ * {@link CatalogEventServlet} and patches the tiles of added, updated and
+ * removed notebooks in place.
  */
 @WebServlet("/home")
 public class HomeServlet extends BaseServlet {
@@ -46,6 +52,9 @@ public class HomeServlet extends BaseServlet {
 	/** The Constant serialVersionUID. */
 	private static final long serialVersionUID = -512109101238411127L;
 
+	/** The Constant SCRIPT. */
+	private static final ContainerTag SCRIPT = script(rawHtml(resource("home.js")));
+
 	/** The Constant EXPORT_PDF_HD. */
 	private static final boolean EXPORT_PDF_HD = PropertiesCache.getInstance().getBoolean(PropertiesCache.PDFHDEXPORT);
 	
@@ -66,29 +75,68 @@ public class HomeServlet extends BaseServlet {
 	protected void doGet(HttpServletRequest request, HttpServletResponse response)
 			throws ServletException, IOException {
 
-		RemarkableManager rm = RemarkableManager.getInstance();
-		rm.readContents();
-		List<Content> docs = rm.getNotebooks();
+		// the version is read first, so a change in between leads to a reload and is not missed
+		long version = ContentCatalog.getInstance().getVersion();
+		List<Content> docs = ContentCatalog.getInstance().getNotebooks();
 
-		setTitle("Remarkable Console - Home");
+		if (viewNotModified(request, response)) {
+			return;
+		}
 
 		ContainerTag processor = a("Export").withHref("processor?download=true&read=true&export=true");
 
-		render(response, main(div(processor).attr("style", "text-align:right"), br(), each(docs, d ->
-
-		div(table(
-				tbody(tr(td(image(d.getThumbnail(), "notebook?id=" + d.getId()))), tr(td(attrs(".title"), d.getName())),
-						tr(td(attrs(".pages"), d.getPages().size() + " Seiten"), tr(td(attrs(".downloads"),
-
-								iff(EXPORT_PDF_ALL, a("PDF").withHref("download?type=pdf&notebook=" + d.getId())),
+		FragmentCache fragments = FragmentCache.getInstance();
 
-								iff(EXPORT_PDF_HD, text(" ")),
-								iff(EXPORT_PDF_HD, a("HD").withHref("download?type=pdfhd&notebook=" + d.getId()))
+		PrintWriter out = beginDocument(response, "Remarkable Console - Home");
+		out.write("<main>");
+		div(processor).attr("style", "text-align:right").render(out);
+		br().render(out);
+		out.write("<div id=\"notebooks\" data-version=\"" + version + "\">");
+		writeBatched(out, docs, d -> rawHtml(fragments.get(d, "tile", () -> tile(d).render())));
+		out.write("</div>");
+		SCRIPT.render(out);
+		out.write("</main>");
+		endDocument(out);
 
-						))))))
+	}
 
-		)));
+	/**
+	 * Gets the tile of the notebook.
+	 *
+	 * @param d the notebook
+	 * @return the tile
+	 */
+	private ContainerTag tile(Content d) {
+		ContainerTag downloads = td(attrs(".downloads"));
+		boolean first = true;
+		for (Map.Entry<String, String> download : downloads(d).entrySet()) {
+			if (!first) {
+				downloads.with(text(" "));
+			}
+			downloads.with(a(download.getKey()).withHref(download.getValue()));
+			first = false;
+		}
+
+		return div(table(tbody(tr(td(image(ImageServlet.thumbnailUrl(d), "notebook?id=" + d.getId()))),
+				tr(td(attrs(".title"), d.getName())), tr(td(attrs(".pages"), d.getPages().size() + " Seiten"),
+						tr(downloads))))).attr("data-id", d.getId());
+	}
 
+	/**
+	 * Gets the downloads of the notebook shown on its tile.
+	 *
+	 * @param d the notebook
+	 * @return the urls by label
+	 */
+	public static Map<String, String> downloads(Content d) {
+		Map<String, String> downloads = new LinkedHashMap<>();
+		if (EXPORT_PDF_ALL) {
+			downloads.put("PDF", "download?type=pdf&notebook=" + d.getId());
+		}
+		if (EXPORT_PDF_HD) {
+			downloads.put("HD", "download?type=pdfhd&notebook=" + d.getId());
+		}
+		return downloads;
 	}
 
 }
@@ -0,0 +1,142 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.console.server.servlet;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.rogatio.remarkable.api.model.content.Content;
+import org.rogatio.remarkable.api.model.content.Page;
+import org.rogatio.remarkable.console.server.ContentCatalog;
+import org.rogatio.remarkable.console.server.ImageCache;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * The Class ImageServlet streams thumbnails and page images as separate,
+ * browser cacheable resources. The urls built by this class carry the
+ * modification time of the file, so a cached image is replaced after a new
+ * export.
+ */
+@WebServlet("/thumbnail")
+public class ImageServlet extends BaseServlet {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 2466913452035283742L;
+
+	/** The Constant TYPE_PNG. */
+	public static final String TYPE_PNG = "png";
+
+	/**
+	 * Do get.
+	 *
+	 * @param request  the request
+	 * @param response the response
+	 * @throws ServletException the servlet exception
+	 * @throws IOException      Signals that an I/O exception has occurred.
+	 */
+	protected void doGet(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+
+		Content nb = ContentCatalog.getInstance().getContentById(request.getParameter("notebook"));
+
+		if (nb == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		File imgFile = null;
+		if (request.getParameter("no") == null) {
+			imgFile = nb.getThumbnail();
+		} else {
+			long no = getLong(request, "no", -1);
+			if (no >= 0 && no < nb.getPages().size()) {
+				Page p = nb.getPage((int) no);
+				imgFile = TYPE_PNG.equals(request.getParameter("type")) ? p.getPng() : p.getThumbnail();
+			}
+		}
+
+		if (imgFile == null || !imgFile.isFile()) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		// versioned urls never change their content, others are revalidated
+		response.setHeader("Cache-Control", request.getParameter("v") != null ? CACHE_FOREVER : CACHE_REVALIDATE);
+
+		if (notModified(request, response, etag(imgFile), imgFile.lastModified())) {
+			return;
+		}
+
+		byte[] bytes = ImageCache.getInstance().get(imgFile);
+
+		String mimeType = getMimeType(imgFile);
+		response.setContentType(mimeType != null ? mimeType : "image/png");
+		response.setContentLength(bytes.length);
+		response.getOutputStream().write(bytes);
+	}
+
+	/**
+	 * Gets the url of the notebook thumbnail.
+	 *
+	 * @param nb the notebook
+	 * @return the url
+	 */
+	public static String thumbnailUrl(Content nb) {
+		return "thumbnail?notebook=" + nb.getId() + version(nb.getThumbnail());
+	}
+
+	/**
+	 * Gets the url of the page thumbnail.
+	 *
+	 * @param p the page
+	 * @return the url
+	 */
+	public static String thumbnailUrl(Page p) {
+		return "thumbnail?notebook=" + p.getNotebook().getId() + "&no=" + p.getPageNumber()
+				+ version(p.getThumbnail());
+	}
+
+	/**
+	 * Gets the url of the page png.
+	 *
+	 * @param p the page
+	 * @return the url
+	 */
+	public static String pngUrl(Page p) {
+		return "thumbnail?notebook=" + p.getNotebook().getId() + "&no=" + p.getPageNumber() + "&type=" + TYPE_PNG
+				+ version(p.getPng());
+	}
+
+	/**
+	 * Gets the version parameter of the image file.
+	 *
+	 * @param imgFile the img file
+	 * @return the version parameter
+	 */
+	private static String version(File imgFile) {
+		if (imgFile == null || !imgFile.exists()) {
+			return "";
+		}
+		return "&v=" + Long.toHexString(imgFile.lastModified());
+	}
+
+}
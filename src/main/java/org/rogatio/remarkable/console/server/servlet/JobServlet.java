@@ -0,0 +1,156 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.console.server.servlet;
+
+import java.io.IOException;
+
+import org.rogatio.remarkable.console.server.EventBroadcaster;
+import org.rogatio.remarkable.console.server.JobManager;
+import org.rogatio.remarkable.console.server.JsonWriter;
+import org.rogatio.remarkable.console.server.ProcessingJob;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * The Class JobServlet starts, polls and cancels the background processing
+ * jobs.
+ * <ul>
+ * <li>POST /jobs?download=true&amp;read=true&amp;export=true starts a job or
+ * returns the running one</li>
+ * <li>GET /jobs?id=... returns the job, GET /jobs returns all jobs</li>
+ * <li>GET /jobs/events?id=... streams the progress as server-sent events</li>
+ * <li>POST /jobs/cancel?id=... cancels the job before its next step</li>
+ * </ul>
+ */
+@WebServlet(urlPatterns = "/jobs/*", asyncSupported = true)
+public class JobServlet extends BaseServlet {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = -3177018367254312455L;
+
+	/**
+	 * Do get.
+	 *
+	 * @param request  the request
+	 * @param response the response
+	 * @throws ServletException the servlet exception
+	 * @throws IOException      Signals that an I/O exception has occurred.
+	 */
+	protected void doGet(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		String path = request.getPathInfo();
+		String id = request.getParameter("id");
+
+		if ("/events".equals(path)) {
+			ProcessingJob job = JobManager.getInstance().get(id);
+			if (job == null) {
+				response.sendError(HttpServletResponse.SC_NOT_FOUND);
+				return;
+			}
+			streamEvents(request, response, job);
+		} else if (path == null || "/".equals(path)) {
+			response.setHeader("Cache-Control", "no-store");
+			if (id != null) {
+				ProcessingJob job = JobManager.getInstance().get(id);
+				if (job == null) {
+					response.sendError(HttpServletResponse.SC_NOT_FOUND);
+					return;
+				}
+				writeJson(response, job);
+			} else {
+				response.setContentType("application/json");
+				response.setCharacterEncoding("UTF-8");
+				JsonWriter json = new JsonWriter(response.getWriter());
+				json.beginArray();
+				for (ProcessingJob job : JobManager.getInstance().getJobs()) {
+					job.write(json);
+				}
+				json.endArray();
+			}
+		} else {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+		}
+	}
+
+	/**
+	 * Do post.
+	 *
+	 * @param request  the request
+	 * @param response the response
+	 * @throws ServletException the servlet exception
+	 * @throws IOException      Signals that an I/O exception has occurred.
+	 */
+	protected void doPost(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		String path = request.getPathInfo();
+
+		if ("/cancel".equals(path)) {
+			String id = request.getParameter("id");
+			if (JobManager.getInstance().get(id) == null) {
+				response.sendError(HttpServletResponse.SC_NOT_FOUND);
+				return;
+			}
+			JobManager.getInstance().cancel(id);
+			writeJson(response, JobManager.getInstance().get(id));
+		} else if (path == null || "/".equals(path)) {
+			ProcessingJob job = JobManager.getInstance().start(request.getParameter("download") != null,
+					request.getParameter("read") != null, request.getParameter("export") != null);
+			response.setStatus(HttpServletResponse.SC_ACCEPTED);
+			response.setHeader("Location", "jobs?id=" + job.getId());
+			writeJson(response, job);
+		} else {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+		}
+	}
+
+	/**
+	 * Writes the job as json.
+	 *
+	 * @param response the response
+	 * @param job      the job
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void writeJson(HttpServletResponse response, ProcessingJob job) throws IOException {
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+		job.write(new JsonWriter(response.getWriter()));
+	}
+
+	/**
+	 * Streams the progress of the job as server-sent events until the job is
+	 * finished. The request thread is released immediately.
+	 *
+	 * @param request  the request
+	 * @param response the response
+	 * @param job      the job
+	 * @throws IOException Signals that an I/O exception has occurred.
+	 */
+	private void streamEvents(HttpServletRequest request, HttpServletResponse response, ProcessingJob job)
+			throws IOException {
+		EventBroadcaster events = job.getEvents();
+		EventBroadcaster.Subscriber subscriber = events.subscribe(request, response);
+
+		// sends the current state, the stream of a finished job ends after it
+		events.send(subscriber, "progress", job.toJson());
+		events.start(subscriber);
+	}
+
+}
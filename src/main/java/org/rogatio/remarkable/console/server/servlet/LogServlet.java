@@ -0,0 +1,113 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.console.server.servlet;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.core.LoggerContext;
+import org.apache.logging.log4j.core.config.Configuration;
+import org.rogatio.remarkable.console.server.EventBroadcaster;
+import org.rogatio.remarkable.console.server.JsonWriter;
+import org.rogatio.remarkable.console.server.ServletAppender;
+import org.rogatio.remarkable.console.terminal.LogBuffer;
+import org.rogatio.remarkable.console.terminal.LogRecord;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * The Class LogServlet streams the log as server-sent events. Any number of
+ * clients could follow the log at the same time. The recent records of the
+ * {@link LogBuffer} are queried with the parameters
+ * <ul>
+ * <li>last - the number of records, which are replayed before the stream</li>
+ * <li>level - the minimum level</li>
+ * <li>from, to - the time window in millis</li>
+ * <li>format=json - answers the records as json array instead of a stream</li>
+ * </ul>
+ * Every record carries its sequence number, so a client could drop a replayed
+ * record which was streamed already.
+ */
+@WebServlet(urlPatterns = "/log", asyncSupported = true)
+public class LogServlet extends BaseServlet {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 6121360405046787127L;
+
+	/** The Constant MAX_REPLAY. */
+	private static final int MAX_REPLAY = 200;
+
+	/**
+	 * Do get.
+	 *
+	 * @param request  the request
+	 * @param response the response
+	 * @throws ServletException the servlet exception
+	 * @throws IOException      Signals that an I/O exception has occurred.
+	 */
+	protected void doGet(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		Level level = Level.toLevel(request.getParameter("level"), null);
+		long from = getLong(request, "from", 0);
+		long to = getLong(request, "to", Long.MAX_VALUE);
+
+		if ("json".equals(request.getParameter("format"))) {
+			int last = (int) Math.min(getLong(request, "last", 100), LogBuffer.getInstance().getCapacity());
+			List<LogRecord> records = LogBuffer.getInstance().find(level, from, to, last);
+
+			response.setContentType("application/json");
+			response.setCharacterEncoding("UTF-8");
+			response.setHeader("Cache-Control", "no-store");
+			JsonWriter json = new JsonWriter(response.getWriter());
+			json.beginArray();
+			for (LogRecord record : records) {
+				ServletAppender.write(json, record);
+			}
+			json.endArray();
+			json.flush();
+			return;
+		}
+
+		LoggerContext ctx = (LoggerContext) LogManager.getContext(false);
+		Configuration config = ctx.getConfiguration();
+		ServletAppender appender = (ServletAppender) config.getAppender("ServletAppender");
+
+		if (appender == null) {
+			response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+			return;
+		}
+
+		EventBroadcaster broadcaster = appender.getBroadcaster();
+		// records published during the replay are written after it
+		EventBroadcaster.Subscriber subscriber = broadcaster.subscribe(request, response);
+
+		int last = (int) Math.min(getLong(request, "last", 0), MAX_REPLAY);
+		if (last > 0) {
+			for (LogRecord record : LogBuffer.getInstance().find(level, from, to, last)) {
+				broadcaster.send(subscriber, "log", ServletAppender.toJson(record));
+			}
+		}
+		broadcaster.start(subscriber);
+	}
+
+}
@@ -21,13 +21,20 @@ import static j2html.TagCreator.*;
 import static j2html.TagCreator.main;
 
 import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
-import org.rogatio.remarkable.api.RemarkableManager;
 import org.rogatio.remarkable.api.io.PropertiesCache;
 import org.rogatio.remarkable.api.model.content.Content;
 import org.rogatio.remarkable.api.model.content.Page;
+import org.rogatio.remarkable.console.server.ContentCatalog;
+import org.rogatio.remarkable.console.server.FragmentCache;
+import org.rogatio.remarkable.console.server.ServerConfig;
 
+import j2html.tags.ContainerTag;
+import j2html.utils.EscapeUtil;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServlet;
@@ -35,7 +42,11 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
 /**
- * The Class NotebookServlet.
+ * The Class NotebookServlet shows the pages of a notebook in windows of the
+ * configured page size (default {@value #DEFAULT_LIMIT}, parameters offset and
+ * limit). The script of the page loads the following windows from the
+ * {@link PageListServlet}, when the end of the grid is scrolled into view.
+ * Without script the pager links lead to the next window.
  */
 @WebServlet("/notebook")
 public class NotebookServlet extends BaseServlet {
@@ -50,6 +61,15 @@ public class NotebookServlet extends BaseServlet {
 	private static final boolean EXPORT_PDF_PAGES = PropertiesCache.getInstance()
 			.getBoolean(PropertiesCache.PDFPAGESINGLE);
 
+	/** The Constant DEFAULT_LIMIT. */
+	public static final int DEFAULT_LIMIT = 24;
+
+	/** The Constant MAX_LIMIT. */
+	public static final int MAX_LIMIT = 200;
+
+	/** The Constant SCRIPT. */
+	private static final ContainerTag SCRIPT = script(rawHtml(resource("notebook.js")));
+
 	/**
 	 * Do get.
 	 *
@@ -63,31 +83,145 @@ public class NotebookServlet extends BaseServlet {
 	protected void doGet(HttpServletRequest request, HttpServletResponse response)
 			throws ServletException, IOException {
 
-		RemarkableManager rm = RemarkableManager.getInstance();
-		Content nb = rm.getContentById(request.getParameter("id"));
+		Content nb = ContentCatalog.getInstance().getContentById(request.getParameter("id"));
+
+		if (nb == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
 
 		List<Page> pages = nb.getPages();
+		int limit = getLimit(request);
+		int offset = getOffset(request, pages.size());
+		int end = Math.min(offset + limit, pages.size());
+
+		if (viewNotModified(request, response, nb.getId(), offset, limit)) {
+			return;
+		}
+
+		PrintWriter out = beginDocument(response, "Remarkable Console - Notebook '" + nb.getName() + "'");
+		out.write("<main>");
+		div(text("ZIP: "), a("SVG").withHref(zipUrl(nb, "svg")), text(" "), a("PNG").withHref(zipUrl(nb, "png")),
+				iff(EXPORT_PDF_PAGES, text(" ")), iff(EXPORT_PDF_PAGES, a("PDF").withHref(zipUrl(nb, "pdf"))))
+						.attr("style", "text-align:right").render(out);
+		// the grid is written in parts, so its tags are written separately
+		out.write("<div id=\"grid\" data-notebook=\"" + EscapeUtil.escape(nb.getId()) + "\" data-limit=\"" + limit
+				+ "\" data-next=\"" + (end < pages.size() ? end : "") + "\">");
+		writeBatched(out, pages.subList(offset, end), p -> rawHtml(pageTile(nb, p)));
+		out.write("</div>");
+
+		ContainerTag pager = div().withId("pager").attr("style", "clear:both");
+		if (offset > 0) {
+			pager.with(a("Vorherige Seiten").withHref(notebookUrl(nb, Math.max(0, offset - limit), limit)), text(" "));
+		}
+		if (end < pages.size()) {
+			pager.with(a("Weitere Seiten").withId("more").withHref(notebookUrl(nb, end, limit)));
+		}
+		pager.render(out);
+		SCRIPT.render(out);
+		out.write("</main>");
+		endDocument(out);
 
-		setTitle("Remarkable Console - Notebook '" + nb.getName() + "'");
+	}
 
-		render(response, main(each(pages, p ->
+	/**
+	 * Gets the cached tile of the page.
+	 *
+	 * @param nb the notebook
+	 * @param p  the page
+	 * @return the html of the tile
+	 */
+	static String pageTile(Content nb, Page p) {
+		return FragmentCache.getInstance().get(nb, "page:" + p.getPageNumber(), () -> {
+			ContainerTag downloads = td(attrs(".downloads"));
+			for (Map.Entry<String, String> download : downloads(nb, p).entrySet()) {
+				if (downloads.getNumChildren() > 0) {
+					downloads.with(text(" "));
+				}
+				downloads.with(a(download.getKey()).withHref(download.getValue()));
+			}
+
+			return div(table(tbody(tr(td(image(ImageServlet.thumbnailUrl(p), navigationUrl(nb, p)))),
+					tr(downloads)))).render();
+		});
+	}
+
+	/**
+	 * Gets the download links of the page.
+	 *
+	 * @param nb the notebook
+	 * @param p  the page
+	 * @return the urls by label
+	 */
+	static Map<String, String> downloads(Content nb, Page p) {
+		String query = "&notebook=" + nb.getId() + "&no=" + p.getPageNumber();
+
+		Map<String, String> downloads = new LinkedHashMap<>();
+		downloads.put("SVG", "download?type=svg" + query);
+		downloads.put("PNG", "download?type=png" + query);
+		if (EXPORT_PDF_PAGES) {
+			downloads.put("PDF", "download?type=pdf" + query);
+		}
+		if (EXPORT_PDF_HD) {
+			downloads.put("HD", "download?type=pdfhd" + query);
+		}
+		return downloads;
+	}
+
+	/**
+	 * Gets the url of the page view.
+	 *
+	 * @param nb the notebook
+	 * @param p  the page
+	 * @return the url
+	 */
+	static String navigationUrl(Content nb, Page p) {
+		return "navigation?notebook=" + nb.getId() + "&no=" + p.getPageNumber();
+	}
 
-		div(table(tbody(tr(td(image(p.getThumbnail(), "navigation?notebook=" + nb.getId() + "&no=" + p.getPageNumber()))),
-				tr(td(attrs(".downloads"),
-						a("SVG").withHref("download?type=svg&notebook=" + nb.getId() + "&no=" + p.getPageNumber()),
-						text(" "),
-						a("PNG").withHref("download?type=png&notebook=" + nb.getId() + "&no=" + p.getPageNumber()),
-						
-						iff(EXPORT_PDF_PAGES, text(" ")), iff(EXPORT_PDF_PAGES, a("PDF")
-								.withHref("download?type=pdf&notebook=" + nb.getId() + "&no=" + p.getPageNumber())),
-						
-						iff(EXPORT_PDF_HD, text(" ")), iff(EXPORT_PDF_HD, a("HD")
-								.withHref("download?type=pdfhd&notebook=" + nb.getId() + "&no=" + p.getPageNumber()))
+	/**
+	 * Gets the url of the zip archive of all pages in the format.
+	 *
+	 * @param nb     the notebook
+	 * @param format the format
+	 * @return the url
+	 */
+	private static String zipUrl(Content nb, String format) {
+		return "download?type=zip&format=" + format + "&notebook=" + nb.getId();
+	}
 
-				)))))
+	/**
+	 * Gets the url of a window of the notebook view.
+	 *
+	 * @param nb     the notebook
+	 * @param offset the offset
+	 * @param limit  the limit
+	 * @return the url
+	 */
+	private static String notebookUrl(Content nb, int offset, int limit) {
+		return "notebook?id=" + nb.getId() + "&offset=" + offset + "&limit=" + limit;
+	}
 
-		)));
+	/**
+	 * Gets the number of pages of a window.
+	 *
+	 * @param request the request
+	 * @return the limit
+	 */
+	static int getLimit(HttpServletRequest request) {
+		int limit = (int) getLong(request, "limit", ServerConfig.getInt(ServerConfig.NOTEBOOK_PAGESIZE, DEFAULT_LIMIT));
+		return Math.max(1, Math.min(limit, MAX_LIMIT));
+	}
 
+	/**
+	 * Gets the first page of a window.
+	 *
+	 * @param request the request
+	 * @param total   the number of pages
+	 * @return the offset
+	 */
+	static int getOffset(HttpServletRequest request, int total) {
+		return (int) Math.min(getLong(request, "offset", 0), total);
 	}
 
 }
@@ -0,0 +1,108 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.console.server.servlet;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+import org.rogatio.remarkable.api.model.content.Content;
+import org.rogatio.remarkable.api.model.content.Page;
+import org.rogatio.remarkable.console.server.ContentCatalog;
+import org.rogatio.remarkable.console.server.JsonWriter;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * The Class PageListServlet lists a window of the pages of a notebook as json
+ * for the infinite scrolling of the {@link NotebookServlet}. The parameters are
+ * the same as those of the notebook view (id, offset and limit); next is the
+ * offset of the following window or null after the last page.
+ */
+@WebServlet("/pages")
+public class PageListServlet extends BaseServlet {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 3160375402417295148L;
+
+	/**
+	 * Do get.
+	 *
+	 * @param request  the request
+	 * @param response the response
+	 * @throws ServletException the servlet exception
+	 * @throws IOException      Signals that an I/O exception has occurred.
+	 */
+	protected void doGet(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+
+		Content nb = ContentCatalog.getInstance().getContentById(request.getParameter("id"));
+
+		if (nb == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		List<Page> pages = nb.getPages();
+		int limit = NotebookServlet.getLimit(request);
+		int offset = NotebookServlet.getOffset(request, pages.size());
+		int end = Math.min(offset + limit, pages.size());
+
+		if (viewNotModified(request, response, nb.getId(), offset, limit)) {
+			return;
+		}
+
+		response.setContentType("application/json");
+		response.setCharacterEncoding("UTF-8");
+
+		JsonWriter json = new JsonWriter(response.getWriter());
+		json.beginObject();
+		json.name("notebook").value(nb.getId());
+		json.name("total").value(pages.size());
+		json.name("offset").value(offset);
+		json.name("limit").value(limit);
+		json.name("next");
+		if (end < pages.size()) {
+			json.value(end);
+		} else {
+			json.nullValue();
+		}
+
+		json.name("pages").beginArray();
+		for (Page p : pages.subList(offset, end)) {
+			json.beginObject();
+			json.name("no").value(p.getPageNumber());
+			json.name("thumbnail").value(ImageServlet.thumbnailUrl(p));
+			json.name("href").value(NotebookServlet.navigationUrl(nb, p));
+			json.name("downloads").beginArray();
+			for (Map.Entry<String, String> download : NotebookServlet.downloads(nb, p).entrySet()) {
+				json.beginObject().name("label").value(download.getKey()).name("href").value(download.getValue())
+						.endObject();
+			}
+			json.endArray();
+			json.endObject();
+		}
+		json.endArray();
+		json.endObject();
+		json.flush();
+	}
+
+}
@@ -24,13 +24,14 @@ import static j2html.TagCreator.iff;
 import static j2html.TagCreator.img;
 import static j2html.TagCreator.main;
 
-import java.io.File;
 import java.io.IOException;
+import java.util.List;
 
-import org.rogatio.remarkable.api.RemarkableManager;
-import org.rogatio.remarkable.api.io.file.Util;
 import org.rogatio.remarkable.api.model.content.Content;
 import org.rogatio.remarkable.api.model.content.Page;
+import org.rogatio.remarkable.console.server.ContentCatalog;
+import org.rogatio.remarkable.console.server.ImageCache;
+import org.rogatio.remarkable.console.server.ServerConfig;
 
 import j2html.tags.ContainerTag;
 import jakarta.servlet.ServletException;
@@ -39,7 +40,10 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
 /**
- * The Class PageNavigationServlet.
+ * The Class PageNavigationServlet shows a page of a notebook with links to the
+ * previous and next page. To flip pages without waiting, the response hints the
+ * browser to prefetch the neighbouring pages, and the images of the pages
+ * around are loaded into the {@link ImageCache} in the background.
  */
 @WebServlet("/navigation")
 public class PageNavigationServlet extends BaseServlet {
@@ -47,6 +51,12 @@ public class PageNavigationServlet extends BaseServlet {
 	/** The Constant serialVersionUID. */
 	private static final long serialVersionUID = -5957420611509472672L;
 
+	/** The Constant SIZES. The page fills the height of a wide window and the width of a narrow one. */
+	private static final String SIZES = "(min-aspect-ratio: 3/4) 75vh, 100vw";
+
+	/** The Constant DEFAULT_PREFETCH. Pages before and after, which are prefetched. */
+	private static final int DEFAULT_PREFETCH = 2;
+
 	/**
 	 * Do get.
 	 *
@@ -58,20 +68,64 @@ public class PageNavigationServlet extends BaseServlet {
 	protected void doGet(HttpServletRequest request, HttpServletResponse response)
 			throws ServletException, IOException {
 
-		RemarkableManager rm = RemarkableManager.getInstance();
-		Content nb = rm.getContentById(request.getParameter("notebook"));
-		Page p = nb.getPage(Integer.parseInt(request.getParameter("no")));
+		Content nb = ContentCatalog.getInstance().getContentById(request.getParameter("notebook"));
+		int no = (int) getLong(request, "no", -1);
+
+		if (nb == null || no < 0 || no >= nb.getPages().size()) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		Page p = nb.getPage(no);
+		prefetch(response, nb, no);
 
-		setTitle("Remarkable Console - Notebook '" + nb.getName() + "' - Page No. " + p.getPageNumber());
+		if (viewNotModified(request, response, nb.getId(), p.getPageNumber())) {
+			return;
+		}
 
-		render(response,
-				main(div(attrs("#container"), refLeft(p), refRight(p)),
-						a(img(attrs(".center-fit")).withSrc(Util.imgToBase64String(p.getPng())))
+		String srcset = ResizeServlet.srcset(p);
+		render(response, "Remarkable Console - Notebook '" + nb.getName() + "' - Page No. " + p.getPageNumber(),
+				main(div(attrs("#container"), refLeft(p), refRight(p),
+						div(a("Zoom").withHref("zoom?notebook=" + nb.getId() + "&no=" + p.getPageNumber()))
+								.attr("style", "text-align:center")),
+						a(img(attrs(".center-fit")).withSrc(ImageServlet.pngUrl(p))
+								.condAttr(srcset != null, "srcset", srcset).condAttr(srcset != null, "sizes", SIZES))
 								.withHref("page?notebook=" + nb.getId() + "&no=" + p.getPageNumber()))
 
 		);
 	}
 
+	/**
+	 * Hints the browser to prefetch the view and the image of the previous and
+	 * next page, and loads the images of the pages around into the image cache.
+	 *
+	 * @param response the response
+	 * @param nb       the notebook
+	 * @param no       the number of the shown page
+	 */
+	private void prefetch(HttpServletResponse response, Content nb, int no) {
+		List<Page> pages = nb.getPages();
+
+		for (int neighbour : new int[] { no + 1, no - 1 }) {
+			if (neighbour >= 0 && neighbour < pages.size()) {
+				Page p = pages.get(neighbour);
+				response.addHeader("Link", "<" + ImageServlet.pngUrl(p) + ">; rel=prefetch; as=image");
+				response.addHeader("Link", "<navigation?notebook=" + nb.getId() + "&no=" + neighbour + ">; rel=prefetch");
+			}
+		}
+
+		int distance = ServerConfig.getInt(ServerConfig.PREFETCH_DISTANCE, DEFAULT_PREFETCH);
+		ImageCache cache = ImageCache.getInstance();
+		for (int i = 1; i <= distance; i++) {
+			if (no + i < pages.size()) {
+				cache.prefetch(pages.get(no + i).getPng());
+			}
+			if (no - i >= 0) {
+				cache.prefetch(pages.get(no - i).getPng());
+			}
+		}
+	}
+
 	/**
 	 * Ref left.
 	 *
@@ -79,18 +133,12 @@ public class PageNavigationServlet extends BaseServlet {
 	 * @return the container tag
 	 */
 	private ContainerTag refLeft(Page p) {
-		try {
-			Content nb = p.getNotebook();
-			int no = p.getPageNumber() - 1;
+		Content nb = p.getNotebook();
+		int no = p.getPageNumber() - 1;
 
-			File file = nb.getPage(no).getPng();
-
-			ContainerTag leftTag = div(attrs(".page .left"),
-					a("" + (no + 1)).withHref("navigation?notebook=" + nb.getId() + "&no=" + no));
-			return iff(file.exists(), iff(p.getPageNumber() > 0, leftTag));
-		} catch (Exception e) {
-			return iff(false, null);
-		}
+		ContainerTag leftTag = div(attrs(".page .left"),
+				a("" + (no + 1)).withHref("navigation?notebook=" + nb.getId() + "&no=" + no));
+		return iff(no >= 0, leftTag);
 	}
 
 	/**
@@ -100,18 +148,12 @@ public class PageNavigationServlet extends BaseServlet {
 	 * @return the container tag
 	 */
 	private ContainerTag refRight(Page p) {
-		try {
-			Content nb = p.getNotebook();
-			int no = p.getPageNumber() + 1;
+		Content nb = p.getNotebook();
+		int no = p.getPageNumber() + 1;
 
-			File file = nb.getPage(no).getPng();
-
-			ContainerTag rightTag = div(attrs(".page .right"),
-					a("" + (no + 1)).withHref("navigation?notebook=" + nb.getId() + "&no=" + no));
-			return iff(file.exists(), iff(p.getPageNumber() < p.getNotebook().getPages().size(), rightTag));
-		} catch (Exception e) {
-			return iff(false, null);
-		}
+		ContainerTag rightTag = div(attrs(".page .right"),
+				a("" + (no + 1)).withHref("navigation?notebook=" + nb.getId() + "&no=" + no));
+		return iff(no < nb.getPages().size(), rightTag);
 	}
 
 }
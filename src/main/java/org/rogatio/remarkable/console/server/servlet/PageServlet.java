@@ -17,15 +17,14 @@
  */
 package org.rogatio.remarkable.console.server.servlet;
 
-import static j2html.TagCreator.fileAsString;
-import static j2html.TagCreator.main;
-
+import java.io.File;
 import java.io.IOException;
+import java.io.PrintWriter;
 
-import org.rogatio.remarkable.api.RemarkableManager;
 import org.rogatio.remarkable.api.io.file.Util;
 import org.rogatio.remarkable.api.model.content.Content;
 import org.rogatio.remarkable.api.model.content.Page;
+import org.rogatio.remarkable.console.server.ContentCatalog;
 
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
@@ -55,14 +54,22 @@ public class PageServlet extends BaseServlet {
 	protected void doGet(HttpServletRequest request, HttpServletResponse response)
 			throws ServletException, IOException {
 
-		RemarkableManager rm = RemarkableManager.getInstance();
-		Content nb = rm.getContentById(request.getParameter("notebook"));
+		Content nb = ContentCatalog.getInstance().getContentById(request.getParameter("notebook"));
 		Page p = nb.getPage(Integer.parseInt(request.getParameter("no")));
 		String svgPath = Util.getFilename(p, "svg");
 
-		setTitle("Remarkable Console - Notebook '" + nb.getName() + "' - Page No. " + p.getPageNumber());
+		File svgFile = new File(svgPath);
+		if (viewNotModified(request, response, nb.getId(), p.getPageNumber(),
+				Long.toHexString(svgFile.lastModified()), Long.toHexString(svgFile.length()))) {
+			return;
+		}
 
-		render(response, main(fileAsString(svgPath)));
+		PrintWriter out = beginDocument(response,
+				"Remarkable Console - Notebook '" + nb.getName() + "' - Page No. " + p.getPageNumber());
+		out.write("<main>");
+		copy(svgFile, out);
+		out.write("</main>");
+		endDocument(out);
 
 	}
 }
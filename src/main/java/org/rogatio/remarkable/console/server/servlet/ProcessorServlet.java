@@ -17,22 +17,32 @@
  */
 package org.rogatio.remarkable.console.server.servlet;
 
+import static j2html.TagCreator.a;
+import static j2html.TagCreator.attrs;
+import static j2html.TagCreator.button;
+import static j2html.TagCreator.div;
+import static j2html.TagCreator.main;
+import static j2html.TagCreator.rawHtml;
+import static j2html.TagCreator.script;
+import static j2html.TagCreator.span;
+import static j2html.TagCreator.tag;
+
 import java.io.IOException;
-import java.io.PrintWriter;
 
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.core.LoggerContext;
-import org.apache.logging.log4j.core.config.Configuration;
-import org.rogatio.remarkable.api.RemarkableManager;
-import org.rogatio.remarkable.console.server.ServletAppender;
+import org.rogatio.remarkable.console.server.JobManager;
+import org.rogatio.remarkable.console.server.ProcessingJob;
 
+import j2html.tags.ContainerTag;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
 /**
- * The Class ProcessorServlet.
+ * The Class ProcessorServlet starts a background processing job and shows its
+ * progress and log. The request returns immediately, the page follows the job
+ * and the log through server-sent events. While a job is running, it is shown
+ * instead of starting another one.
  */
 @WebServlet("/processor")
 public class ProcessorServlet extends BaseServlet {
@@ -40,6 +50,9 @@ public class ProcessorServlet extends BaseServlet {
 	/** The Constant serialVersionUID. */
 	private static final long serialVersionUID = -5957420611509472672L;
 
+	/** The Constant SCRIPT. */
+	private static final ContainerTag SCRIPT = script(rawHtml(resource("processor.js")));
+
 	/**
 	 * Do get.
 	 *
@@ -51,31 +64,18 @@ public class ProcessorServlet extends BaseServlet {
 	protected void doGet(HttpServletRequest request, HttpServletResponse response)
 			throws ServletException, IOException {
 
-		response.setContentType("text/html");
-		PrintWriter out = response.getWriter();
-		LoggerContext ctx = (LoggerContext) LogManager.getContext(false);
-		Configuration config = ctx.getConfiguration();
-		ServletAppender appender = (ServletAppender) config.getAppender("ServletAppender");
-		appender.setWriter(out);
-
-		RemarkableManager rm = RemarkableManager.getInstance();
 		String download = request.getParameter("download");
 		String read = request.getParameter("read");
 		String export = request.getParameter("export");
 
-		setTitle("Remarkable Console - Processor");
+		ProcessingJob job = JobManager.getInstance().start(download != null, read != null, export != null);
 
-		if (download != null) {
-			System.out.println("Download notebooks");
-			rm.downloadContents();
-		}
-		if (read != null) {
-			System.out.println("Read notebooks");
-			rm.readContents();
-		}
-		if (export != null) {
-			System.out.println("Export notebooks");
-			rm.exportNotebooks();
-		}
+		response.setHeader("Cache-Control", "no-store");
+		render(response, "Remarkable Console - Processor",
+				main(div(a("Home").withHref("/")).attr("style", "text-align:right"),
+				div(attrs("#job"), span(attrs("#state"), job.getState().name()), span(" "), span(attrs("#step")),
+						span(" "), tag("progress").attr("id", "progress").attr("max", 1).attr("value", 0),
+						span(" "), button("Cancel").attr("id", "cancel")).attr("data-id", job.getId()),
+				div(attrs("#error")), div(attrs("#log")), SCRIPT));
 	}
 }
@@ -0,0 +1,169 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.console.server.servlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.rogatio.remarkable.api.model.content.Content;
+import org.rogatio.remarkable.api.model.content.Page;
+import org.rogatio.remarkable.console.server.AdmissionLimit;
+import org.rogatio.remarkable.console.server.ContentCatalog;
+import org.rogatio.remarkable.console.server.ImageCache;
+import org.rogatio.remarkable.console.server.ImageResizer;
+import org.rogatio.remarkable.console.server.OnDemandExporter;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * The Class ResizeServlet sends page images scaled to a width, e.g.
+ * image?notebook=..&amp;no=..&amp;w=400. The width is rounded up to the next
+ * bucket of the {@link ImageResizer}; format=jpg sends a jpeg instead of a
+ * png and type=thumbnail scales the thumbnail of the page, or of the notebook
+ * without no. Requests, which export the page or scale the image, have to
+ * pass the admission limit {@link AdmissionLimit#EXPORT}.
+ */
+@WebServlet("/image")
+public class ResizeServlet extends BaseServlet {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = -4122784608021693560L;
+
+	/** The Constant logger. */
+	private static final Logger logger = LogManager.getLogger(ResizeServlet.class);
+
+	/** The Constant TYPE_THUMBNAIL. */
+	private static final String TYPE_THUMBNAIL = "thumbnail";
+
+
+	/**
+	 * Do get.
+	 *
+	 * @param request  the request
+	 * @param response the response
+	 * @throws ServletException the servlet exception
+	 * @throws IOException      Signals that an I/O exception has occurred.
+	 */
+	protected void doGet(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+
+		Content nb = ContentCatalog.getInstance().getContentById(request.getParameter("notebook"));
+		long no = getLong(request, "no", -1);
+		boolean thumbnail = TYPE_THUMBNAIL.equals(request.getParameter("type"));
+		String format = ImageResizer.FORMAT_JPG.equals(request.getParameter("format")) ? ImageResizer.FORMAT_JPG
+				: ImageResizer.FORMAT_PNG;
+		int width = (int) getLong(request, "w", 0);
+
+		if (nb == null || no >= nb.getPages().size() || (no < 0 && !thumbnail) || width <= 0) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		File image;
+		String key;
+		if (no < 0) {
+			image = nb.getThumbnail();
+			key = nb.getId() + "/thumbnail";
+		} else {
+			Page p = nb.getPage((int) no);
+			image = thumbnail ? p.getThumbnail() : p.getPng();
+			key = nb.getId() + "/" + no + (thumbnail ? "-thumbnail" : "");
+		}
+
+		if (image == null) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		ImageResizer resizer = ImageResizer.getInstance();
+
+		// exports and resizes are limited, existing variants are sent at once
+		AdmissionLimit limit = resizer.isResized(image, key, width, format) ? null
+				: AdmissionLimit.get(AdmissionLimit.EXPORT);
+		if (limit != null && !admit(limit, response)) {
+			return;
+		}
+
+		File variant;
+		try {
+			// a png, which was not exported yet, is exported now
+			if (!OnDemandExporter.getInstance().export(nb, image)) {
+				response.sendError(HttpServletResponse.SC_NOT_FOUND);
+				return;
+			}
+			variant = resizer.resize(image, key, width, format);
+		} catch (RejectedExecutionException e) {
+			unavailable(response);
+			return;
+		} catch (Exception e) {
+			logger.error("Error resizing " + image, e);
+			response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+			return;
+		} finally {
+			if (limit != null) {
+				limit.release();
+			}
+		}
+
+		// versioned urls never change their content, others are revalidated
+		response.setHeader("Cache-Control", request.getParameter("v") != null ? CACHE_FOREVER : CACHE_REVALIDATE);
+
+		if (notModified(request, response, etag(variant), variant.lastModified())) {
+			return;
+		}
+
+		byte[] bytes = ImageCache.getInstance().get(variant);
+
+		response.setContentType(variant.getName().endsWith("." + ImageResizer.FORMAT_JPG) ? "image/jpeg" : "image/png");
+		response.setContentLength(bytes.length);
+		response.getOutputStream().write(bytes);
+	}
+
+	/**
+	 * Gets the srcset of the page png. It lists the widths of the buckets below
+	 * the width of the png and the png itself, so the browser loads the
+	 * smallest image which fills its place.
+	 *
+	 * @param p the page
+	 * @return the srcset or null, if the width of the png is unknown
+	 */
+	public static String srcset(Page p) {
+		File png = p.getPng();
+		int pngWidth = png != null && png.isFile() ? ImageResizer.getInstance().getWidth(png) : 0;
+		if (pngWidth <= 0) {
+			return null;
+		}
+
+		String version = "&v=" + Long.toHexString(png.lastModified());
+		StringBuilder srcset = new StringBuilder();
+		for (int width : ImageResizer.WIDTHS) {
+			if (width < pngWidth) {
+				srcset.append("image?notebook=").append(p.getNotebook().getId()).append("&no=")
+						.append(p.getPageNumber()).append("&w=").append(width).append(version).append(' ')
+						.append(width).append("w, ");
+			}
+		}
+		return srcset.append(ImageServlet.pngUrl(p)).append(' ').append(pngWidth).append('w').toString();
+	}
+
+}
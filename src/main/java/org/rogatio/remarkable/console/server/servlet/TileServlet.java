@@ -0,0 +1,155 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.console.server.servlet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.rogatio.remarkable.api.model.content.Content;
+import org.rogatio.remarkable.api.model.content.Page;
+import org.rogatio.remarkable.console.server.AdmissionLimit;
+import org.rogatio.remarkable.console.server.ContentCatalog;
+import org.rogatio.remarkable.console.server.OnDemandExporter;
+import org.rogatio.remarkable.console.server.TilePyramid;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * The Class TileServlet sends the deep zoom pyramid of a page in the layout of
+ * the DZI format.
+ * <ul>
+ * <li>GET /tiles/&lt;notebook&gt;/&lt;no&gt;.dzi sends the descriptor</li>
+ * <li>GET /tiles/&lt;notebook&gt;/&lt;no&gt;_files/&lt;level&gt;/&lt;col&gt;_&lt;row&gt;.png
+ * sends a tile</li>
+ * </ul>
+ * The pyramid is generated by the {@link TilePyramid} on the first request.
+ * Requests, which export the page or generate the pyramid, have to pass the
+ * admission limit {@link AdmissionLimit#EXPORT}.
+ */
+@WebServlet("/tiles/*")
+public class TileServlet extends BaseServlet {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = 6315008722094735081L;
+
+	/** The Constant logger. */
+	private static final Logger logger = LogManager.getLogger(TileServlet.class);
+
+	/** The Constant PATH. Notebook, page number and optionally level, column and row of a tile. */
+	private static final Pattern PATH = Pattern
+			.compile("/([^/]+)/(\\d{1,9})(?:\\.dzi|_files/(\\d{1,9})/(\\d{1,9})_(\\d{1,9})\\." + TilePyramid.FORMAT + ")");
+
+	/**
+	 * Do get.
+	 *
+	 * @param request  the request
+	 * @param response the response
+	 * @throws ServletException the servlet exception
+	 * @throws IOException      Signals that an I/O exception has occurred.
+	 */
+	protected void doGet(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+		Matcher matcher = request.getPathInfo() != null ? PATH.matcher(request.getPathInfo()) : null;
+		if (matcher == null || !matcher.matches()) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		Content nb = ContentCatalog.getInstance().getContentById(matcher.group(1));
+		int no = Integer.parseInt(matcher.group(2));
+		if (nb == null || no >= nb.getPages().size()) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		Page p = nb.getPage(no);
+		TilePyramid pyramid = TilePyramid.getInstance();
+
+		// exports and generations are limited, generated tiles are sent at once
+		AdmissionLimit limit = pyramid.isGenerated(p) ? null : AdmissionLimit.get(AdmissionLimit.EXPORT);
+		if (limit != null && !admit(limit, response)) {
+			return;
+		}
+
+		File file;
+		try {
+			// a png, which was not exported yet, is exported now
+			if (!OnDemandExporter.getInstance().export(nb, p.getPng())) {
+				response.sendError(HttpServletResponse.SC_NOT_FOUND);
+				return;
+			}
+
+			if (matcher.group(3) == null) {
+				file = new File(pyramid.getPyramid(p), TilePyramid.DESCRIPTOR);
+			} else {
+				file = pyramid.getTile(p, Integer.parseInt(matcher.group(3)), Integer.parseInt(matcher.group(4)),
+						Integer.parseInt(matcher.group(5)));
+			}
+		} catch (RejectedExecutionException e) {
+			unavailable(response);
+			return;
+		} catch (Exception e) {
+			logger.error("Error creating tiles of page " + no + " of notebook '" + nb.getName() + "'", e);
+			response.sendError(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+			return;
+		} finally {
+			if (limit != null) {
+				limit.release();
+			}
+		}
+
+		if (file == null || !file.isFile()) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		// versioned urls never change their content, others are revalidated
+		response.setHeader("Cache-Control", request.getParameter("v") != null ? CACHE_FOREVER : CACHE_REVALIDATE);
+
+		if (notModified(request, response, etag(file), file.lastModified())) {
+			return;
+		}
+
+		// tiles are small files, which are streamed without the image cache, so
+		// they do not evict the thumbnails and page images
+		response.setContentType(matcher.group(3) == null ? "application/xml" : "image/" + TilePyramid.FORMAT);
+		response.setContentLengthLong(file.length());
+		Files.copy(file.toPath(), response.getOutputStream());
+	}
+
+	/**
+	 * Gets the url of the descriptor of the page.
+	 *
+	 * @param p the page
+	 * @return the url
+	 */
+	public static String descriptorUrl(Page p) {
+		String url = "tiles/" + p.getNotebook().getId() + "/" + p.getPageNumber() + ".dzi";
+		File png = p.getPng();
+		return png != null && png.exists() ? url + "?v=" + Long.toHexString(png.lastModified()) : url;
+	}
+
+}
@@ -0,0 +1,87 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.console.server.servlet;
+
+import static j2html.TagCreator.a;
+import static j2html.TagCreator.attrs;
+import static j2html.TagCreator.div;
+import static j2html.TagCreator.main;
+import static j2html.TagCreator.rawHtml;
+import static j2html.TagCreator.script;
+import static j2html.TagCreator.span;
+
+import java.io.IOException;
+
+import org.rogatio.remarkable.api.model.content.Content;
+import org.rogatio.remarkable.api.model.content.Page;
+import org.rogatio.remarkable.console.server.ContentCatalog;
+
+import j2html.tags.ContainerTag;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+/**
+ * The Class ZoomServlet shows a page in a deep zoom viewer. The viewer loads
+ * only the tiles of the {@link TileServlet}, which are on screen, in the
+ * resolution of the current zoom.
+ */
+@WebServlet("/zoom")
+public class ZoomServlet extends BaseServlet {
+
+	/** The Constant serialVersionUID. */
+	private static final long serialVersionUID = -1209475618325409873L;
+
+	/** The Constant SCRIPT. */
+	private static final ContainerTag SCRIPT = script(rawHtml(resource("deepzoom.js")));
+
+	/**
+	 * Do get.
+	 *
+	 * @param request  the request
+	 * @param response the response
+	 * @throws ServletException the servlet exception
+	 * @throws IOException      Signals that an I/O exception has occurred.
+	 */
+	protected void doGet(HttpServletRequest request, HttpServletResponse response)
+			throws ServletException, IOException {
+
+		Content nb = ContentCatalog.getInstance().getContentById(request.getParameter("notebook"));
+		int no = (int) getLong(request, "no", -1);
+
+		if (nb == null || no < 0 || no >= nb.getPages().size()) {
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+
+		Page p = nb.getPage(no);
+
+		if (viewNotModified(request, response, nb.getId(), p.getPageNumber(), "zoom")) {
+			return;
+		}
+
+		render(response, "Remarkable Console - Notebook '" + nb.getName() + "' - Page No. " + p.getPageNumber(),
+				main(div(a("-").withId("zoom-out").withHref("#"), span(" "), a("Fit").withId("zoom-fit").withHref("#"),
+						span(" "), a("+").withId("zoom-in").withHref("#"), span(" "),
+						a("Back").withHref("navigation?notebook=" + nb.getId() + "&no=" + p.getPageNumber()))
+								.attr("style", "text-align:right"),
+						div(attrs("#viewer")).attr("data-dzi", TileServlet.descriptorUrl(p)), SCRIPT));
+	}
+
+}
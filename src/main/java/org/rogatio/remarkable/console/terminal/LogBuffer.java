@@ -0,0 +1,203 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.console.terminal;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+
+/**
+ * The Class LogBuffer keeps the latest log records in a ring buffer of fixed
+ * capacity, so the memory stays the same however long the console runs. Adding
+ * a record is lock-free: a sequence number selects the slot, which overwrites
+ * the oldest record. Readers skip slots which were overwritten while reading.
+ * <p>
+ * The terminal and the servlet appender both add the events they receive, so
+ * the buffer is filled as long as one of them is configured. An event, which
+ * is passed to both appenders, is kept once.
+ */
+public class LogBuffer {
+
+	/** The Constant DEFAULT_CAPACITY. */
+	private static final int DEFAULT_CAPACITY = 10000;
+
+	/** The Constant INSTANCE. */
+	private static final LogBuffer INSTANCE = new LogBuffer(DEFAULT_CAPACITY);
+
+	/** The slots. */
+	private final AtomicReferenceArray<LogRecord> slots;
+
+	/** The next sequence number. */
+	private final AtomicLong sequence = new AtomicLong();
+
+	/** The last record added by the appenders on the thread. */
+	private final ThreadLocal<Recorded> recorded = new ThreadLocal<>();
+
+	/**
+	 * The Class Recorded is the last record of a thread with the appenders,
+	 * which already added its event.
+	 */
+	private static class Recorded {
+
+		/** The event. */
+		private final LogEvent event;
+
+		/** The record. */
+		private final LogRecord record;
+
+		/** The appenders. */
+		private final Set<String> appenders = new HashSet<>();
+
+		/**
+		 * Instantiates a new recorded event.
+		 *
+		 * @param event  the event
+		 * @param record the record
+		 */
+		private Recorded(LogEvent event, LogRecord record) {
+			this.event = event;
+			this.record = record;
+		}
+	}
+
+	/**
+	 * Instantiates a new log buffer.
+	 *
+	 * @param capacity the capacity
+	 */
+	public LogBuffer(int capacity) {
+		slots = new AtomicReferenceArray<>(capacity);
+	}
+
+	/**
+	 * Gets the log buffer shared by the terminal and the web console.
+	 *
+	 * @return the instance
+	 */
+	public static LogBuffer getInstance() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Adds a snapshot of the event.
+	 *
+	 * @param event the event
+	 * @return the record
+	 */
+	public LogRecord add(LogEvent event) {
+		long seq = sequence.getAndIncrement();
+		LogRecord record = new LogRecord(seq, event);
+		slots.set((int) (seq % slots.length()), record);
+		return record;
+	}
+
+	/**
+	 * Adds a snapshot of the event received by an appender. Log4j passes the
+	 * same event to all appenders of a logger one after another on the logging
+	 * thread, so an event, which another appender has added just before, is not
+	 * added again. A new event is recognized, when the appender has added the
+	 * last record already, because log4j may reuse the event objects.
+	 *
+	 * @param appender the name of the appender
+	 * @param event    the event
+	 * @return the record
+	 */
+	public LogRecord add(String appender, LogEvent event) {
+		Recorded last = recorded.get();
+		if (last != null && last.event == event && !last.appenders.contains(appender)
+				&& last.record.getTimeMillis() == event.getTimeMillis() && last.record.getLevel() == event.getLevel()) {
+			last.appenders.add(appender);
+			return last.record;
+		}
+
+		Recorded next = new Recorded(event, add(event));
+		next.appenders.add(appender);
+		recorded.set(next);
+		return next.record;
+	}
+
+	/**
+	 * Gets the last records.
+	 *
+	 * @param n the number of records
+	 * @return the last records, oldest first
+	 */
+	public List<LogRecord> getLast(int n) {
+		return find(null, 0, Long.MAX_VALUE, n);
+	}
+
+	/**
+	 * Finds the newest records with the level or a more specific level in the
+	 * time window.
+	 *
+	 * @param level the minimum level or null for all levels
+	 * @param from  the start of the time window in millis (inclusive)
+	 * @param to    the end of the time window in millis (inclusive)
+	 * @param limit the maximum number of records
+	 * @return the records, oldest first
+	 */
+	public List<LogRecord> find(Level level, long from, long to, int limit) {
+		List<LogRecord> result = new ArrayList<>();
+		long end = sequence.get();
+		long start = Math.max(0, end - slots.length());
+
+		for (long seq = end - 1; seq >= start && result.size() < limit; seq--) {
+			LogRecord record = slots.get((int) (seq % slots.length()));
+			// the slot was overwritten by a newer record or is not written yet
+			if (record == null || record.getSequence() != seq) {
+				continue;
+			}
+			if (level != null && !record.getLevel().isMoreSpecificThan(level)) {
+				continue;
+			}
+			if (record.getTimeMillis() < from || record.getTimeMillis() > to) {
+				continue;
+			}
+			result.add(record);
+		}
+
+		Collections.reverse(result);
+		return result;
+	}
+
+	/**
+	 * Gets the capacity.
+	 *
+	 * @return the capacity
+	 */
+	public int getCapacity() {
+		return slots.length();
+	}
+
+	/**
+	 * Gets the number of records added since the start.
+	 *
+	 * @return the count
+	 */
+	public long getCount() {
+		return sequence.get();
+	}
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.console.terminal;
+
+import org.apache.logging.log4j.Level;
+import org.apache.logging.log4j.core.LogEvent;
+
+/**
+ * The Class LogRecord is an immutable snapshot of a log event. Log4j reuses
+ * its event objects, so the values are copied when the event is recorded.
+ */
+public final class LogRecord {
+
+	/** The sequence number. */
+	private final long sequence;
+
+	/** The time millis. */
+	private final long timeMillis;
+
+	/** The level. */
+	private final Level level;
+
+	/** The logger name. */
+	private final String loggerName;
+
+	/** The thread name. */
+	private final String threadName;
+
+	/** The message. */
+	private final String message;
+
+	/**
+	 * Instantiates a new log record.
+	 *
+	 * @param sequence the sequence number
+	 * @param event    the event
+	 */
+	public LogRecord(long sequence, LogEvent event) {
+		this.sequence = sequence;
+		this.timeMillis = event.getTimeMillis();
+		this.level = event.getLevel();
+		this.loggerName = event.getLoggerName();
+		this.threadName = event.getThreadName();
+		String formatted = event.getMessage().getFormattedMessage();
+		if (event.getThrown() != null) {
+			formatted += " (" + event.getThrown() + ")";
+		}
+		this.message = formatted;
+	}
+
+	/**
+	 * Gets the sequence number.
+	 *
+	 * @return the sequence
+	 */
+	public long getSequence() {
+		return sequence;
+	}
+
+	/**
+	 * Gets the time millis.
+	 *
+	 * @return the time millis
+	 */
+	public long getTimeMillis() {
+		return timeMillis;
+	}
+
+	/**
+	 * Gets the level.
+	 *
+	 * @return the level
+	 */
+	public Level getLevel() {
+		return level;
+	}
+
+	/**
+	 * Gets the logger name.
+	 *
+	 * @return the logger name
+	 */
+	public String getLoggerName() {
+		return loggerName;
+	}
+
+	/**
+	 * Gets the thread name.
+	 *
+	 * @return the thread name
+	 */
+	public String getThreadName() {
+		return threadName;
+	}
+
+	/**
+	 * Gets the message.
+	 *
+	 * @return the message
+	 */
+	public String getMessage() {
+		return message;
+	}
+
+}
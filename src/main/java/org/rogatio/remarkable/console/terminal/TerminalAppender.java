@@ -18,9 +18,6 @@
 package org.rogatio.remarkable.console.terminal;
 
 import java.io.Serializable;
-import java.time.Instant;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentMap;
 
 import org.apache.logging.log4j.Level;
 import org.apache.logging.log4j.core.Appender;
@@ -35,14 +32,12 @@ import org.apache.logging.log4j.core.config.plugins.PluginElement;
 import org.apache.logging.log4j.core.config.plugins.PluginFactory;
 
 /**
- * The Class TerminalAppender.
+ * The Class TerminalAppender prints the log events to the terminal. The recent
+ * events are kept by the {@link LogBuffer}.
  */
 @Plugin(name = "TerminalAppender", category = Core.CATEGORY_NAME, elementType = Appender.ELEMENT_TYPE)
 public class TerminalAppender extends AbstractAppender {
 
-	/** The event map. */
-	private ConcurrentMap<String, LogEvent> eventMap = new ConcurrentHashMap<>();
-
 	/**
 	 * Instantiates a new terminal appender.
 	 *
@@ -88,32 +83,38 @@ public class TerminalAppender extends AbstractAppender {
 	 */
 	@Override
 	public void append(LogEvent event) {
-		eventMap.put(Instant.now().toString(), event);
-
-		String color = getColor(event);
+		LogBuffer.getInstance().add(getName(), event);
+		System.out.print(format(event.getLevel(), event.getMessage().getFormattedMessage()) + "\n"
+				+ Prompt.getPrefix(" "));
 
-		String line = (color + "[" + event.getLevel().name() + "] " + TerminalColor.RESET
-				+ event.getMessage().getFormattedMessage() + "\n" + Prompt.getPrefix(" "));
-
-		System.out.print(line);
+	}
 
+	/**
+	 * Formats a log line with the colored level.
+	 *
+	 * @param level   the level
+	 * @param message the message
+	 * @return the line
+	 */
+	public static String format(Level level, String message) {
+		return getColor(level) + "[" + level.name() + "] " + TerminalColor.RESET + message;
 	}
 
 	/**
 	 * Gets the color.
 	 *
-	 * @param event the event
+	 * @param level the level
 	 * @return the color
 	 */
-	private String getColor(LogEvent event) {
+	private static String getColor(Level level) {
 		String color = TerminalColor.BLACK_BOLD_BRIGHT;
-		if (event.getLevel() == Level.INFO) {
+		if (level == Level.INFO) {
 			color = TerminalColor.GREEN_BOLD_BRIGHT;
-		} else if (event.getLevel() == Level.WARN) {
+		} else if (level == Level.WARN) {
 			color = TerminalColor.YELLOW_BOLD_BRIGHT;
-		} else if (event.getLevel() == Level.ERROR) {
+		} else if (level == Level.ERROR) {
 			color = TerminalColor.RED_BOLD_BRIGHT;
-		} else if (event.getLevel() == Level.DEBUG) {
+		} else if (level == Level.DEBUG) {
 			color = TerminalColor.BLUE_BOLD_BRIGHT;
 		}
 		return color;
@@ -30,7 +30,7 @@ import picocli.CommandLine.Command;
  */
 @Command(name = "", description = "Interactive remarkable console with completion", footer = { "",
 		"Use 'exit' to end console." }, subcommands = { ExitTerminalCommand.class, ClearScreenCommand.class,
-				LogLevelCommand.class, NotebookCommand.class, NotebooksCommand.class, ServerCommand.class })
+				LogLevelCommand.class, NotebookCommand.class, NotebooksCommand.class, ServerCommand.class, SiteCommand.class })
 public class CommandlineCommands implements Runnable {
 	
 	/** The reader. */
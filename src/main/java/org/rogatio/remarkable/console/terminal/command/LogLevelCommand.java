@@ -17,7 +17,9 @@
  */
 package org.rogatio.remarkable.console.terminal.command;
 
+import java.text.SimpleDateFormat;
 import java.util.ArrayList;
+import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
 
@@ -25,9 +27,14 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.core.LoggerContext;
 import org.apache.logging.log4j.core.config.Configuration;
 import org.apache.logging.log4j.core.config.LoggerConfig;
+import org.apache.logging.log4j.Level;
+import org.rogatio.remarkable.console.terminal.LogBuffer;
 import org.rogatio.remarkable.console.terminal.LogLevel;
+import org.rogatio.remarkable.console.terminal.LogRecord;
+import org.rogatio.remarkable.console.terminal.TerminalAppender;
 
 import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
 import picocli.CommandLine.Parameters;
 import picocli.CommandLine.ParentCommand;
 
@@ -63,6 +70,19 @@ public class LogLevelCommand implements Runnable {
 	@Parameters(description = "Logging level", completionCandidates = LogLevelCandidates.class)
 	private List<String> levels = new ArrayList<String>();
 
+	/** The number of recent log records to show. */
+	@Option(names = { "-t", "--tail" }, description = "Show the last log records")
+	private int tail;
+
+	/** The minimum level of the shown log records. */
+	@Option(names = { "-f",
+			"--filter" }, description = "Show only log records of this or a more severe level", completionCandidates = LogLevelCandidates.class)
+	private LogLevel filter;
+
+	/** The time window of the shown log records. */
+	@Option(names = { "-s", "--since" }, description = "Show only log records of the last minutes")
+	private int since;
+
 	/** The parent. */
 	@ParentCommand
 	CommandlineCommands parent;
@@ -71,6 +91,11 @@ public class LogLevelCommand implements Runnable {
 	 * Run.
 	 */
 	public void run() {
+		if (tail > 0 || filter != null || since > 0) {
+			printRecords();
+			return;
+		}
+
 		LoggerContext ctx = (LoggerContext) LogManager.getContext(false);
 		Configuration config = ctx.getConfiguration();
 		LoggerConfig loggerConfig = config.getLoggerConfig(LogManager.ROOT_LOGGER_NAME);
@@ -93,4 +118,19 @@ public class LogLevelCommand implements Runnable {
 			return;
 		}
 	}
+
+	/**
+	 * Prints the recent log records.
+	 */
+	private void printRecords() {
+		Level level = filter != null ? filter.getLevel() : null;
+		long from = since > 0 ? System.currentTimeMillis() - since * 60000L : 0;
+		int limit = tail > 0 ? tail : LogBuffer.getInstance().getCapacity();
+
+		SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss.SSS");
+		for (LogRecord record : LogBuffer.getInstance().find(level, from, Long.MAX_VALUE, limit)) {
+			System.out.println(format.format(new Date(record.getTimeMillis())) + " "
+					+ TerminalAppender.format(record.getLevel(), record.getMessage()));
+		}
+	}
 }
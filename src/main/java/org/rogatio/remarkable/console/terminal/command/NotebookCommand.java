@@ -27,7 +27,10 @@ import java.util.concurrent.Callable;
 import org.rogatio.remarkable.api.RemarkableManager;
 import org.rogatio.remarkable.api.io.PropertiesCache;
 import org.rogatio.remarkable.api.io.file.Util;
+import org.rogatio.remarkable.api.model.content.Content;
 import org.rogatio.remarkable.api.model.web.ContentMetaData;
+import org.rogatio.remarkable.console.server.ContentCatalog;
+import org.rogatio.remarkable.console.server.Precompressor;
 
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
@@ -119,6 +122,15 @@ public class NotebookCommand implements Callable<Object> {
 			if (export || full) {
 				rm.exportNotebook(meta);
 			}
+
+			ContentCatalog catalog = ContentCatalog.getInstance();
+			catalog.invalidate();
+			if (export || full) {
+				Content nb = catalog.getContentByFolderAndName(name);
+				if (nb != null) {
+					Precompressor.compressExports(nb);
+				}
+			}
 		}
 		return null;
 	}
@@ -21,6 +21,8 @@ import java.io.IOException;
 import java.util.concurrent.Callable;
 
 import org.rogatio.remarkable.api.RemarkableManager;
+import org.rogatio.remarkable.console.server.ContentCatalog;
+import org.rogatio.remarkable.console.server.Precompressor;
 
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
@@ -74,7 +76,10 @@ public class NotebooksCommand implements Callable<Object> {
 		}
 		if (export || full) {
 			RemarkableManager.getInstance().exportNotebooks();
+			Precompressor.compressExports();
 		}
+
+		ContentCatalog.getInstance().invalidate();
 		return null;
 	}
 
@@ -19,11 +19,18 @@ package org.rogatio.remarkable.console.terminal.command;
 
 import java.awt.Desktop;
 import java.io.IOException;
+import java.io.PrintWriter;
 import java.net.URI;
 import java.util.concurrent.Callable;
 
 import org.rogatio.remarkable.api.io.PropertiesCache;
 import org.rogatio.remarkable.console.server.EmbeddedServer;
+import org.rogatio.remarkable.console.server.FragmentCache;
+import org.rogatio.remarkable.console.server.ImageCache;
+import org.rogatio.remarkable.console.server.ImageResizer;
+import org.rogatio.remarkable.console.server.ServerConfig;
+import org.rogatio.remarkable.console.server.ServerMetrics;
+import org.rogatio.remarkable.console.server.TilePyramid;
 
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Option;
@@ -50,6 +57,10 @@ public class ServerCommand implements Callable<Object> {
 	@Option(names = { "--stop" }, description = "Stop Server")
 	boolean stop;
 
+	/** The stats. */
+	@Option(names = { "--stats" }, description = "Show request, cache and jvm statistics")
+	boolean stats;
+
 	/**
 	 * Call.
 	 *
@@ -61,15 +72,27 @@ public class ServerCommand implements Callable<Object> {
 			if (start) {
 				server.start();
 
-				if (Desktop.isDesktopSupported()) {
+				// behind a proxy on a unix socket only, there is no port to browse
+				boolean tcp = ServerConfig.getBoolean(ServerConfig.TCP, true)
+						|| ServerConfig.getValue(ServerConfig.UNIXSOCKET, "").isEmpty();
+				if (tcp && Desktop.isDesktopSupported()) {
 					Desktop desktop = Desktop.getDesktop();
 					int port = PropertiesCache.getInstance().getInt(PropertiesCache.SERVERPORT);
 					desktop.browse(new URI("http://localhost:" + port + "/"));
 				}
 			} else if (stop) {
 				server.stop();
+			} else if (stats) {
+				ServerMetrics.getInstance().writeSummary(new PrintWriter(System.out));
 			} else {
 				System.out.println("Server is started: " + server.isStarted());
+				System.out.println(ImageCache.getInstance());
+				System.out.println(FragmentCache.getInstance());
+				System.out.println(TilePyramid.getInstance());
+				System.out.println(ImageResizer.getInstance());
+				if (server.getThreadPool() != null) {
+					System.out.println(server.getThreadPool());
+				}
 			}
 		} catch (Exception e) {
 		}
@@ -0,0 +1,60 @@
+/*
+ * Remarkable API - Copyright (C) 2021 Matthias Wegner
+ * 
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ * 
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ * 
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ * 
+ */
+package org.rogatio.remarkable.console.terminal.command;
+
+import java.io.File;
+import java.util.concurrent.Callable;
+
+import org.rogatio.remarkable.console.server.SiteGenerator;
+
+import picocli.CommandLine.Command;
+import picocli.CommandLine.Option;
+import picocli.CommandLine.ParentCommand;
+
+/**
+ * The Class SiteCommand.
+ */
+@Command(name = "site", description = "Render web pages into static files", version = "1.0", mixinStandardHelpOptions = true)
+public class SiteCommand implements Callable<Object> {
+
+	/** The parent. */
+	@ParentCommand
+	private CommandlineCommands parent;
+
+	/** The output folder. */
+	@Option(names = { "-o", "--output" }, description = "Folder of the static files")
+	File output;
+
+	/** The full. */
+	@Option(names = { "-f", "--full" }, description = "Render unchanged notebooks too")
+	boolean full;
+
+	/**
+	 * Call.
+	 *
+	 * @return the void
+	 * @throws Exception the exception
+	 */
+	public Void call() throws Exception {
+		SiteGenerator generator = new SiteGenerator(output != null ? output : SiteGenerator.getDefaultFolder(), full);
+		generator.generate();
+		System.out.println("Rendered " + generator);
+		return null;
+	}
+
+}
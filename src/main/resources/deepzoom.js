@@ -0,0 +1,199 @@
+(function() {
+	var viewer = document.getElementById('viewer');
+	if (!viewer || !window.fetch || !window.DOMParser) {
+		return;
+	}
+
+	var src = viewer.getAttribute('data-dzi');
+	var query = src.indexOf('?') >= 0 ? src.substring(src.indexOf('?')) : '';
+	var base = src.substring(0, src.lastIndexOf('.dzi')) + '_files/';
+
+	var width, height, tileSize, format, maxLevel, backgroundLevel;
+	var scale = 1, minScale = 1, maxScale = 1, x = 0, y = 0;
+	var tiles = {};
+	var pointers = {};
+	var scheduled = false;
+
+	function levelSize(level) {
+		var factor = Math.pow(2, maxLevel - level);
+		return { width: Math.ceil(width / factor), height: Math.ceil(height / factor) };
+	}
+
+	function schedule() {
+		if (!scheduled) {
+			scheduled = true;
+			window.requestAnimationFrame(draw);
+		}
+	}
+
+	function fit() {
+		minScale = Math.min(viewer.clientWidth / width, viewer.clientHeight / height);
+		maxScale = Math.max(minScale, 4 / (window.devicePixelRatio || 1));
+		scale = minScale;
+		x = (viewer.clientWidth - width * scale) / 2;
+		y = (viewer.clientHeight - height * scale) / 2;
+		schedule();
+	}
+
+	function zoom(factor, px, py) {
+		var next = Math.max(minScale / 2, Math.min(maxScale, scale * factor));
+		x = px - (px - x) * next / scale;
+		y = py - (py - y) * next / scale;
+		scale = next;
+		schedule();
+	}
+
+	// places the tiles of a level, which are visible, and returns their keys
+	function place(level, wanted, background) {
+		var size = levelSize(level);
+		var factor = Math.pow(2, maxLevel - level) * scale;
+		var cols = Math.ceil(size.width / tileSize);
+		var rows = Math.ceil(size.height / tileSize);
+		var span = tileSize * factor;
+
+		var c0 = background ? 0 : Math.max(0, Math.floor(-x / span));
+		var c1 = background ? cols - 1 : Math.min(cols - 1, Math.floor((viewer.clientWidth - x) / span));
+		var r0 = background ? 0 : Math.max(0, Math.floor(-y / span));
+		var r1 = background ? rows - 1 : Math.min(rows - 1, Math.floor((viewer.clientHeight - y) / span));
+
+		for (var c = c0; c <= c1; c++) {
+			for (var r = r0; r <= r1; r++) {
+				var key = level + '/' + c + '_' + r;
+				var tile = tiles[key];
+				if (!tile) {
+					tile = document.createElement('img');
+					tile.src = base + key + '.' + format + query;
+					tile.draggable = false;
+					tile.style.zIndex = background ? 0 : 1;
+					viewer.appendChild(tile);
+					tiles[key] = tile;
+				}
+				var left = Math.floor(x + c * span);
+				var top = Math.floor(y + r * span);
+				tile.style.left = left + 'px';
+				tile.style.top = top + 'px';
+				tile.style.width = (Math.ceil(x + Math.min(size.width, (c + 1) * tileSize) * factor) - left) + 'px';
+				tile.style.height = (Math.ceil(y + Math.min(size.height, (r + 1) * tileSize) * factor) - top) + 'px';
+				wanted[key] = true;
+			}
+		}
+	}
+
+	function draw() {
+		scheduled = false;
+		var ratio = window.devicePixelRatio || 1;
+		var level = maxLevel + Math.ceil(Math.log(scale * ratio) / Math.LN2);
+		level = Math.max(backgroundLevel, Math.min(maxLevel, level));
+
+		var wanted = {};
+		place(backgroundLevel, wanted, true);
+		if (level > backgroundLevel) {
+			place(level, wanted, false);
+		}
+
+		// only the tiles on screen are kept
+		for (var key in tiles) {
+			if (!wanted[key]) {
+				viewer.removeChild(tiles[key]);
+				delete tiles[key];
+			}
+		}
+	}
+
+	function position(e) {
+		var rect = viewer.getBoundingClientRect();
+		return { x: e.clientX - rect.left, y: e.clientY - rect.top };
+	}
+
+	function distance() {
+		var ids = Object.keys(pointers);
+		var a = pointers[ids[0]], b = pointers[ids[1]];
+		return Math.sqrt((a.x - b.x) * (a.x - b.x) + (a.y - b.y) * (a.y - b.y));
+	}
+
+	viewer.addEventListener('wheel', function(e) {
+		e.preventDefault();
+		var p = position(e);
+		zoom(Math.exp(-e.deltaY * (e.deltaMode === 1 ? 0.05 : 0.002)), p.x, p.y);
+	}, { passive: false });
+
+	viewer.addEventListener('dblclick', function(e) {
+		var p = position(e);
+		zoom(e.shiftKey ? 0.5 : 2, p.x, p.y);
+	});
+
+	viewer.addEventListener('pointerdown', function(e) {
+		viewer.setPointerCapture(e.pointerId);
+		pointers[e.pointerId] = position(e);
+	});
+
+	viewer.addEventListener('pointermove', function(e) {
+		var last = pointers[e.pointerId];
+		if (!last) {
+			return;
+		}
+		var p = position(e);
+		var count = Object.keys(pointers).length;
+		if (count === 1) {
+			x += p.x - last.x;
+			y += p.y - last.y;
+			pointers[e.pointerId] = p;
+			schedule();
+		} else if (count === 2) {
+			var before = distance();
+			pointers[e.pointerId] = p;
+			var ids = Object.keys(pointers);
+			var a = pointers[ids[0]], b = pointers[ids[1]];
+			zoom(distance() / before, (a.x + b.x) / 2, (a.y + b.y) / 2);
+		}
+	});
+
+	function release(e) {
+		delete pointers[e.pointerId];
+	}
+	viewer.addEventListener('pointerup', release);
+	viewer.addEventListener('pointercancel', release);
+
+	function button(id, action) {
+		var element = document.getElementById(id);
+		if (element) {
+			element.addEventListener('click', function(e) {
+				e.preventDefault();
+				action();
+			});
+		}
+	}
+	button('zoom-in', function() { zoom(2, viewer.clientWidth / 2, viewer.clientHeight / 2); });
+	button('zoom-out', function() { zoom(0.5, viewer.clientWidth / 2, viewer.clientHeight / 2); });
+	button('zoom-fit', fit);
+
+	window.addEventListener('resize', schedule);
+
+	fetch(src).then(function(response) {
+		if (!response.ok) {
+			throw new Error(response.status);
+		}
+		return response.text();
+	}).then(function(text) {
+		var xml = new DOMParser().parseFromString(text, 'application/xml');
+		var image = xml.getElementsByTagName('Image')[0];
+		var size = xml.getElementsByTagName('Size')[0];
+		tileSize = parseInt(image.getAttribute('TileSize'), 10);
+		format = image.getAttribute('Format');
+		width = parseInt(size.getAttribute('Width'), 10);
+		height = parseInt(size.getAttribute('Height'), 10);
+		maxLevel = 0;
+		while (Math.pow(2, maxLevel) < Math.max(width, height)) {
+			maxLevel++;
+		}
+
+		// the largest level in a single tile is shown while the tiles of the zoom load
+		backgroundLevel = maxLevel;
+		while (backgroundLevel > 0 && Math.max(levelSize(backgroundLevel).width, levelSize(backgroundLevel).height) > tileSize) {
+			backgroundLevel--;
+		}
+		fit();
+	}).catch(function() {
+		viewer.textContent = 'Page could not be loaded';
+	});
+})();
@@ -0,0 +1,115 @@
+(function() {
+	var notebooks = document.getElementById('notebooks');
+	if (!notebooks || !window.EventSource || !window.JSON) {
+		return;
+	}
+
+	var version = notebooks.getAttribute('data-version');
+
+	function row(cell) {
+		var tr = document.createElement('tr');
+		tr.appendChild(cell);
+		return tr;
+	}
+
+	function cell(className, text) {
+		var td = document.createElement('td');
+		if (className) {
+			td.className = className;
+		}
+		if (text) {
+			td.textContent = text;
+		}
+		return td;
+	}
+
+	function tile(nb) {
+		var img = document.createElement('img');
+		img.src = nb.thumbnail;
+		img.setAttribute('loading', 'lazy');
+		var link = document.createElement('a');
+		link.href = nb.href;
+		link.appendChild(img);
+		var imageCell = cell();
+		imageCell.appendChild(link);
+
+		var downloads = cell('downloads');
+		nb.downloads.forEach(function(download, i) {
+			if (i > 0) {
+				downloads.appendChild(document.createTextNode(' '));
+			}
+			var a = document.createElement('a');
+			a.href = download.href;
+			a.textContent = download.label;
+			downloads.appendChild(a);
+		});
+
+		var body = document.createElement('tbody');
+		body.appendChild(row(imageCell));
+		body.appendChild(row(cell('title', nb.name)));
+		body.appendChild(row(cell('pages', nb.pages + ' Seiten')));
+		body.appendChild(row(downloads));
+		var table = document.createElement('table');
+		table.appendChild(body);
+		var div = document.createElement('div');
+		div.setAttribute('data-id', nb.id);
+		div.appendChild(table);
+		return div;
+	}
+
+	function find(id) {
+		var children = notebooks.children;
+		for (var i = 0; i < children.length; i++) {
+			if (children[i].getAttribute('data-id') === id) {
+				return children[i];
+			}
+		}
+		return null;
+	}
+
+	// places the tile at the position of the notebook in the catalog
+	function place(nb) {
+		var old = find(nb.id);
+		var fresh = tile(nb);
+		if (old) {
+			notebooks.replaceChild(fresh, old);
+		} else {
+			notebooks.insertBefore(fresh, notebooks.children[nb.index] || null);
+		}
+	}
+
+	var events = new EventSource('events');
+
+	events.addEventListener('version', function(e) {
+		// changes were missed before the stream started or while it was interrupted
+		if (String(JSON.parse(e.data).version) !== version) {
+			events.close();
+			window.location.reload();
+		}
+	});
+
+	events.addEventListener('snapshot', function(e) {
+		version = String(JSON.parse(e.data).version);
+	});
+
+	events.addEventListener('added', function(e) {
+		var nb = JSON.parse(e.data);
+		place(nb);
+		version = String(nb.version);
+	});
+
+	events.addEventListener('updated', function(e) {
+		var nb = JSON.parse(e.data);
+		place(nb);
+		version = String(nb.version);
+	});
+
+	events.addEventListener('removed', function(e) {
+		var nb = JSON.parse(e.data);
+		var old = find(nb.id);
+		if (old) {
+			notebooks.removeChild(old);
+		}
+		version = String(nb.version);
+	});
+})();
@@ -0,0 +1,81 @@
+(function() {
+	var grid = document.getElementById('grid');
+	var pager = document.getElementById('pager');
+	var more = document.getElementById('more');
+	if (!grid || !more || !window.IntersectionObserver || !window.fetch) {
+		return;
+	}
+
+	var id = encodeURIComponent(grid.getAttribute('data-notebook'));
+	var limit = grid.getAttribute('data-limit');
+	var next = grid.getAttribute('data-next');
+	var loading = false;
+
+	function tile(page) {
+		var img = document.createElement('img');
+		img.src = page.thumbnail;
+		img.setAttribute('loading', 'lazy');
+		var link = document.createElement('a');
+		link.href = page.href;
+		link.appendChild(img);
+
+		var downloads = document.createElement('td');
+		downloads.className = 'downloads';
+		page.downloads.forEach(function(download, i) {
+			if (i > 0) {
+				downloads.appendChild(document.createTextNode(' '));
+			}
+			var a = document.createElement('a');
+			a.href = download.href;
+			a.textContent = download.label;
+			downloads.appendChild(a);
+		});
+
+		var imageCell = document.createElement('td');
+		imageCell.appendChild(link);
+		var imageRow = document.createElement('tr');
+		imageRow.appendChild(imageCell);
+		var downloadRow = document.createElement('tr');
+		downloadRow.appendChild(downloads);
+		var body = document.createElement('tbody');
+		body.appendChild(imageRow);
+		body.appendChild(downloadRow);
+		var table = document.createElement('table');
+		table.appendChild(body);
+		var div = document.createElement('div');
+		div.appendChild(table);
+		return div;
+	}
+
+	function load() {
+		if (loading || !next) {
+			return;
+		}
+		loading = true;
+		fetch('pages?id=' + id + '&offset=' + next + '&limit=' + limit).then(function(response) {
+			return response.json();
+		}).then(function(data) {
+			data.pages.forEach(function(page) {
+				grid.appendChild(tile(page));
+			});
+			next = data.next === null ? '' : String(data.next);
+			if (next) {
+				more.href = 'notebook?id=' + id + '&offset=' + next + '&limit=' + limit;
+			} else {
+				more.parentNode.removeChild(more);
+				observer.disconnect();
+			}
+			loading = false;
+		}).catch(function() {
+			// the pager link still leads to the next pages
+			observer.disconnect();
+		});
+	}
+
+	var observer = new IntersectionObserver(function(entries) {
+		if (entries[0].isIntersecting) {
+			load();
+		}
+	}, { rootMargin: '400px' });
+	observer.observe(pager);
+})();
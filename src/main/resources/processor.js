@@ -0,0 +1,51 @@
+(function() {
+	var job = document.getElementById('job');
+	var id = encodeURIComponent(job.getAttribute('data-id'));
+	var cancel = document.getElementById('cancel');
+	var progress = document.getElementById('progress');
+
+	var source = new EventSource('jobs/events?id=' + id);
+	source.addEventListener('progress', function(e) {
+		var data = JSON.parse(e.data);
+		document.getElementById('state').textContent = data.state;
+		document.getElementById('step').textContent = data.step || '';
+		progress.max = Math.max(data.total, 1);
+		progress.value = data.completed;
+		if (data.state !== 'QUEUED' && data.state !== 'RUNNING') {
+			source.close();
+			cancel.disabled = true;
+			if (data.error) {
+				document.getElementById('error').textContent = data.error;
+			}
+		}
+	});
+
+	var log = document.getElementById('log');
+	var lastSeq = -1;
+	var logSource = new EventSource('log?last=50');
+	logSource.addEventListener('log', function(e) {
+		var data = JSON.parse(e.data);
+		// replayed records could overlap with the live stream
+		if (data.seq <= lastSeq) {
+			return;
+		}
+		lastSeq = data.seq;
+		var line = document.createElement('div');
+		var level = document.createElement('b');
+		level.className = 'log-' + data.level;
+		level.textContent = data.level;
+		line.appendChild(level);
+		line.appendChild(document.createTextNode(' ' + data.message));
+		log.appendChild(line);
+	});
+	logSource.addEventListener('dropped', function(e) {
+		var line = document.createElement('div');
+		line.textContent = '... ' + e.data + ' log messages skipped';
+		log.appendChild(line);
+	});
+
+	cancel.onclick = function() {
+		cancel.disabled = true;
+		fetch('jobs/cancel?id=' + id, { method: 'POST' });
+	};
+})();